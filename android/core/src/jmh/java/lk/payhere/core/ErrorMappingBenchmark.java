@@ -0,0 +1,55 @@
+package lk.payhere.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping PayHere responses to errors, and collecting the validation errors
+ * of a bad payment object as validatePayment does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ErrorMappingBenchmark {
+
+    @Param({"1", "10", "100", "5000"})
+    public int itemCount;
+
+    private Map<String, Object> invalidPayment;
+
+    @Setup
+    public void setUp() {
+        invalidPayment = Payloads.onetime(itemCount);
+        invalidPayment.remove(PaymentKey.merchantId);
+        invalidPayment.put(PaymentKey.amount, "1.001");
+        invalidPayment.put(PaymentKey.prefixItemQuantity + 1, "one");
+    }
+
+    @Benchmark
+    public PayHereError responseWithMessage() {
+        return PayHereError.fromResponse(PayHereError.RESPONSE_PAYMENT, -5, "Card declined", 2, null);
+    }
+
+    @Benchmark
+    public PayHereError responseWithDataMessage() {
+        return PayHereError.fromResponse(PayHereError.RESPONSE_OTHER, 1, null, -2, "Insufficient funds");
+    }
+
+    @Benchmark
+    public List<String> validationErrors() throws Exception {
+        List<String> errors = new ArrayList<>();
+        PaymentReader.parse(invalidPayment, errors);
+        return errors;
+    }
+}
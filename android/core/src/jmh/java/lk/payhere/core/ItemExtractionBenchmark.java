@@ -0,0 +1,170 @@
+package lk.payhere.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Item handling on its own: 'item_name_N' style keys through the item table,
+ * amount parsing, and the item total check of finish().
+ *
+ * legacyItemKeys is the baseline: the same keys through the extraction the module
+ * used before the core module existed, which split every key on '_', collected
+ * items in a HashMap by index and looked each value up again by key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ItemExtractionBenchmark {
+
+    @Param({"1", "10", "100", "5000"})
+    public int itemCount;
+
+    private String[] nameKeys;
+    private String[] quantityKeys;
+    private String[] amountKeys;
+    private String[] amounts;
+    private List<PaymentItem> arrayItems;
+    private HashMap<String, Object> legacyPayment;
+
+    @Setup
+    public void setUp() {
+        nameKeys = new String[itemCount];
+        quantityKeys = new String[itemCount];
+        amountKeys = new String[itemCount];
+        amounts = new String[itemCount];
+        arrayItems = new ArrayList<>(itemCount);
+        legacyPayment = new HashMap<>();
+
+        for (int i = 0; i < itemCount; i++){
+            int index = i + 1;
+            nameKeys[i] = PaymentKey.prefixItemName + index;
+            quantityKeys[i] = PaymentKey.prefixItemQuantity + index;
+            amountKeys[i] = PaymentKey.prefixItemAmount + index;
+            amounts[i] = Payloads.itemAmount(i);
+            arrayItems.add(new PaymentItem(null, "Item " + index, 1, PayHereMoney.parse(amounts[i])));
+            legacyPayment.put(nameKeys[i], "Item");
+            legacyPayment.put(quantityKeys[i], "1");
+            legacyPayment.put(amountKeys[i], amounts[i]);
+        }
+    }
+
+    @Benchmark
+    public PaymentRequest itemKeys() throws Exception {
+        PaymentReader reader = new PaymentReader(PaymentRequest.MODE_PREAPPROVAL, new ArrayList<String>());
+        for (int i = 0; i < itemCount; i++){
+            reader.string(nameKeys[i], "Item");
+            reader.number(quantityKeys[i], 1);
+            reader.string(amountKeys[i], amounts[i]);
+        }
+        return reader.finish(null);
+    }
+
+    @Benchmark
+    public List<LegacyItem> legacyItemKeys() throws Exception {
+        return legacyExtractItems(legacyPayment);
+    }
+
+    @Benchmark
+    public PaymentRequest itemArray() throws Exception {
+        PaymentReader reader = new PaymentReader(PaymentRequest.MODE_PREAPPROVAL, new ArrayList<String>());
+        reader.string(PaymentKey.items, PaymentItem.describe(arrayItems));
+        return reader.finish(arrayItems);
+    }
+
+    @Benchmark
+    public long parseAmounts() {
+        long total = 0;
+        for (String amount : amounts){
+            total += PayHereMoney.parse(amount);
+        }
+        return total;
+    }
+
+    /* MARK: Legacy extraction */
+
+    public static final class LegacyItem {
+        String id;
+        String name;
+        int quantity;
+        Double amount;
+    }
+
+    private static ArrayList<LegacyItem> legacyExtractItems(HashMap<String, Object> map) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        HashMap<Integer, LegacyItem> itemMap = new HashMap<>();
+
+        for (Map.Entry<String, Object> entry : map.entrySet()){
+            String key = entry.getKey();
+            if (key == null || key.isEmpty()){
+                continue;
+            }
+
+            if (key.startsWith(PaymentKey.prefixItemNumber)){
+                legacyItem(itemMap, legacyIndex(key)).id = legacyExtract(map, key);
+            }
+            else if (key.startsWith(PaymentKey.prefixItemName)){
+                legacyItem(itemMap, legacyIndex(key)).name = legacyExtract(map, key);
+            }
+            else if (key.startsWith(PaymentKey.prefixItemQuantity)){
+                try {
+                    legacyItem(itemMap, legacyIndex(key)).quantity = Integer.parseInt(legacyExtract(map, key));
+                }
+                catch(NumberFormatException e){
+                    throw new PayHereKeyExtractionException(key, true);
+                }
+            }
+            else if (key.startsWith(PaymentKey.prefixItemAmount)){
+                try {
+                    legacyItem(itemMap, legacyIndex(key)).amount = Double.valueOf(legacyExtract(map, key));
+                }
+                catch(NumberFormatException e){
+                    throw new PayHereKeyExtractionException(key, "Double", true);
+                }
+            }
+        }
+
+        return new ArrayList<>(itemMap.values());
+    }
+
+    private static String legacyExtract(HashMap<String, Object> map, String key) throws PayHereKeyExtractionException {
+        if (!map.containsKey(key)){
+            throw new PayHereKeyExtractionException(key, false);
+        }
+        Object raw = map.get(key);
+        if (raw == null){
+            throw new PayHereKeyExtractionException(key, "Object", true);
+        }
+        return raw.toString();
+    }
+
+    private static int legacyIndex(String key) throws PayHereItemProcessingException {
+        String[] components = key.split("_");
+        String last = components[components.length - 1];
+        try {
+            return Integer.parseInt(last);
+        }
+        catch(NumberFormatException exc){
+            throw new PayHereItemProcessingException(key, last);
+        }
+    }
+
+    private static LegacyItem legacyItem(HashMap<Integer, LegacyItem> itemMap, int index) {
+        LegacyItem item = itemMap.get(index);
+        if (item == null){
+            item = new LegacyItem();
+            itemMap.put(index, item);
+        }
+        return item;
+    }
+}
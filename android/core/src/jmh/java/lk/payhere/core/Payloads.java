@@ -0,0 +1,54 @@
+package lk.payhere.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Realistic payment objects, as JS sends them (numbers are Doubles).
+ */
+final class Payloads {
+
+    private Payloads() {}
+
+    /**
+     * A one-time payment with 'item_name_N' style items adding up to the amount.
+     */
+    static Map<String, Object> onetime(int itemCount) {
+        HashMap<String, Object> payment = new HashMap<>();
+        payment.put(PaymentKey.sandbox, true);
+        payment.put(PaymentKey.merchantId, "1211149");
+        payment.put(PaymentKey.notifyUrl, "https://example.com/notify");
+        payment.put(PaymentKey.orderId, "ItemNo12345");
+        payment.put(PaymentKey.items, "Hello from React Native!");
+        payment.put(PaymentKey.currency, "LKR");
+        payment.put(PaymentKey.firstName, "Saman");
+        payment.put(PaymentKey.lastName, "Perera");
+        payment.put(PaymentKey.email, "samanp@gmail.com");
+        payment.put(PaymentKey.phone, "0771234567");
+        payment.put(PaymentKey.address, "No.1, Galle Road");
+        payment.put(PaymentKey.city, "Colombo");
+        payment.put(PaymentKey.country, "Sri Lanka");
+        payment.put(PaymentKey.deliveryAddress, "No. 46, Galle road, Kalutara South");
+        payment.put(PaymentKey.deliveryCity, "Kalutara");
+        payment.put(PaymentKey.deliveryCountry, "Sri Lanka");
+        payment.put(PaymentKey.customOne, "");
+        payment.put(PaymentKey.customTwo, "");
+
+        long total = 0;
+        for (int i = 0; i < itemCount; i++){
+            int index = i + 1;
+            String amount = itemAmount(i);
+            payment.put(PaymentKey.prefixItemNumber + index, "SKU-" + index);
+            payment.put(PaymentKey.prefixItemName + index, "Item " + index);
+            payment.put(PaymentKey.prefixItemQuantity + index, 1.0);
+            payment.put(PaymentKey.prefixItemAmount + index, amount);
+            total += PayHereMoney.parse(amount);
+        }
+        payment.put(PaymentKey.amount, PayHereMoney.format(total, 2));
+        return payment;
+    }
+
+    static String itemAmount(int i) {
+        return (100 + i) + ".50";
+    }
+}
@@ -0,0 +1,69 @@
+package lk.payhere.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a whole payment object, with the given number of 'item_name_N' style items.
+ *
+ * parseTyped feeds the reader one typed value at a time, as the module does while
+ * walking a ReadableMap. parseCopiedMap first copies the payload into a new HashMap,
+ * as ReadableMap.toHashMap() used to, which shows what the copy costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaymentParsingBenchmark {
+
+    @Param({"1", "10", "100", "5000"})
+    public int itemCount;
+
+    private Map<String, Object> payment;
+    private String[] keys;
+    private Object[] values;
+
+    @Setup
+    public void setUp() {
+        payment = Payloads.onetime(itemCount);
+        keys = payment.keySet().toArray(new String[0]);
+        values = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++){
+            values[i] = payment.get(keys[i]);
+        }
+    }
+
+    @Benchmark
+    public PaymentRequest parseMap() throws Exception {
+        return PaymentReader.parse(payment, null);
+    }
+
+    @Benchmark
+    public PaymentRequest parseCopiedMap() throws Exception {
+        return PaymentReader.parse(new HashMap<>(payment), null);
+    }
+
+    @Benchmark
+    public PaymentRequest parseTyped() throws Exception {
+        PaymentReader reader = new PaymentReader(PaymentRequest.MODE_ONETIME, null);
+        for (int i = 0; i < keys.length; i++){
+            Object value = values[i];
+            if (value instanceof String)
+                reader.string(keys[i], (String) value);
+            else if (value instanceof Double)
+                reader.number(keys[i], (Double) value);
+            else
+                reader.bool(keys[i], (Boolean) value);
+        }
+        return reader.finish(null);
+    }
+}
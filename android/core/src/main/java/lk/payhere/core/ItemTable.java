@@ -0,0 +1,90 @@
+package lk.payhere.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Items keyed by their index, iterated in ascending index order.
+ *
+ * Indices within DENSE_SLACK times the number of items held so far (the usual 1..N
+ * numbering, however long the cart) live in a plain array that grows as needed.
+ * Indices far above the item count are sparse and go to a TreeMap, so a stray
+ * 'item_name_999999' cannot force a huge allocation. Sparse items move to the
+ * array once enough items have been seen to reach them, so every sparse index
+ * stays above the array's length.
+ */
+final class ItemTable {
+    private static final int MIN_DENSE_ITEMS = 64;
+    private static final int DENSE_SLACK = 4;
+
+    private PaymentItem[] dense = new PaymentItem[8];
+    private TreeMap<Integer, PaymentItem> sparse;
+    private int count = 0;
+
+    PaymentItem getOrCreate(int index){
+        if (index < dense.length){
+            PaymentItem item = dense[index];
+            if (item == null){
+                item = new PaymentItem();
+                dense[index] = item;
+                count++;
+            }
+            return item;
+        }
+
+        if (index < denseLimit()){
+            grow(index + 1);
+            return getOrCreate(index);
+        }
+
+        if (sparse == null){
+            sparse = new TreeMap<>();
+        }
+
+        PaymentItem item = sparse.get(index);
+        if (item == null){
+            item = new PaymentItem();
+            sparse.put(index, item);
+            count++;
+        }
+        return item;
+    }
+
+    void addTo(ArrayList<PaymentItem> items){
+        for (PaymentItem item : dense){
+            if (item != null){
+                items.add(item);
+            }
+        }
+        if (sparse != null){
+            items.addAll(sparse.values());
+        }
+    }
+
+    /**
+     * Largest array length the items held so far justify.
+     */
+    private int denseLimit(){
+        return Math.max(MIN_DENSE_ITEMS, DENSE_SLACK * (count + 1));
+    }
+
+    /**
+     * Grows the array to at least minLength, and moves the sparse items it now covers.
+     */
+    private void grow(int minLength){
+        int length = Math.min(denseLimit(), Math.max(dense.length * 2, minLength));
+        dense = Arrays.copyOf(dense, length);
+
+        if (sparse != null){
+            Iterator<Map.Entry<Integer, PaymentItem>> iterator = sparse.headMap(length).entrySet().iterator();
+            while (iterator.hasNext()){
+                Map.Entry<Integer, PaymentItem> entry = iterator.next();
+                dense[entry.getKey()] = entry.getValue();
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package lk.payhere.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with fixed millisecond buckets.
+ *
+ * Recording is lock-free, so it is safe from any thread. Reads are not a
+ * consistent snapshot: a value recorded during a read may show up in the
+ * count but not yet in its bucket.
+ */
+public final class LatencyHistogram {
+
+    /** Upper bounds of the buckets, in milliseconds. A final bucket holds everything slower. */
+    private static final long[] BOUNDS_MS = {
+            1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 300000
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+
+    public void record(long durationNanos) {
+        long nanos = Math.max(0, durationNanos);
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+    }
+
+    static int bucketOf(long durationNanos) {
+        for (int i = 0; i < BOUNDS_MS.length; i++){
+            if (durationNanos <= TimeUnit.MILLISECONDS.toNanos(BOUNDS_MS[i])){
+                return i;
+            }
+        }
+        return BOUNDS_MS.length;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+
+    /**
+     * @return Number of buckets, including the final unbounded one
+     */
+    public int getBucketCount() {
+        return buckets.length();
+    }
+
+    /**
+     * @return Upper bound of the bucket in milliseconds (inclusive), or Long.MAX_VALUE for the final bucket
+     */
+    public long getBucketBoundMs(int bucket) {
+        return bucket < BOUNDS_MS.length ? BOUNDS_MS[bucket] : Long.MAX_VALUE;
+    }
+
+    public long getBucketValue(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket it falls in.
+     * @param percentile Between 0 and 100
+     * @return Bound in milliseconds, Long.MAX_VALUE if it falls in the final bucket, or 0 if nothing was recorded
+     */
+    public long getPercentileBoundMs(double percentile) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++){
+            total += buckets.get(i);
+        }
+        if (total == 0){
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++){
+            seen += buckets.get(i);
+            if (seen >= rank){
+                return getBucketBoundMs(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,28 @@
+package lk.payhere.core;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * PayHere server API URLs, derived from the checkout base URL the SDK uses for the
+ * same environment (PHConfigs.SANDBOX_URL / LIVE_URL), so there is one source for both.
+ */
+public final class PayHereApi {
+
+    private PayHereApi() {}
+
+    /**
+     * @param checkoutBaseUrl Base URL the checkout uses, e.g. PHConfigs.SANDBOX_URL
+     * @return Root of the same server (scheme and host), ending with '/'
+     * @throws IllegalArgumentException The URL is not absolute
+     */
+    public static String baseUrl(String checkoutBaseUrl) {
+        try {
+            URL url = new URL(checkoutBaseUrl);
+            return url.getProtocol() + "://" + url.getAuthority() + "/";
+        }
+        catch(MalformedURLException e){
+            throw new IllegalArgumentException("Invalid PayHere base URL: " + checkoutBaseUrl, e);
+        }
+    }
+}
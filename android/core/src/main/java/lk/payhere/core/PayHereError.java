@@ -0,0 +1,108 @@
+package lk.payhere.core;
+
+/**
+ * An error reported to the JS onError handler.
+ *
+ * Carries a stable code that apps can branch on, a human readable message
+ * and the raw PayHere statuses the error was mapped from (if any).
+ */
+public final class PayHereError {
+
+    public static final String CODE_NETWORK = "network";
+    public static final String CODE_VALIDATION = "validation";
+    public static final String CODE_CANCELED = "canceled";
+    public static final String CODE_PAYMENT_DECLINED = "payment-declined";
+    public static final String CODE_INTENT_DATA = "intent-data";
+    public static final String CODE_UNKNOWN = "unknown";
+
+    /** Value of status/paymentStatus when there was no PayHere response */
+    public static final int NO_STATUS = Integer.MIN_VALUE;
+
+    /*
+     * Kinds of PayHere response status, one per PHResponse.STATUS_* constant.
+     * The SDK constants live in an Android library, so the adapter classifies
+     * the status and passes the kind in.
+     */
+    public static final int RESPONSE_OTHER = 0;
+    public static final int RESPONSE_NETWORK = 1;
+    public static final int RESPONSE_VALIDATION = 2;
+    public static final int RESPONSE_DATA = 3;
+    public static final int RESPONSE_CANCELED = 4;
+    public static final int RESPONSE_PAYMENT = 5;
+    public static final int RESPONSE_UNKNOWN = 6;
+
+    public final String code;
+    public final String message;
+    /** PHResponse status, or NO_STATUS */
+    public final int status;
+    /** StatusResponse status, or NO_STATUS */
+    public final int paymentStatus;
+
+    public PayHereError(String code, String message, int status, int paymentStatus) {
+        this.code = code;
+        this.message = message == null ? "Null error" : message;
+        this.status = status;
+        this.paymentStatus = paymentStatus;
+    }
+
+    /**
+     * The payment object was rejected before the PayHere activity was launched.
+     */
+    public static PayHereError validation(String message) {
+        return new PayHereError(CODE_VALIDATION, message, NO_STATUS, NO_STATUS);
+    }
+
+    public static PayHereError unknown(String message) {
+        return new PayHereError(CODE_UNKNOWN, message, NO_STATUS, NO_STATUS);
+    }
+
+    /**
+     * Maps a failed PayHere response to an error.
+     * @param kind One of the RESPONSE_* constants, classifying status
+     * @param status PHResponse status
+     * @param message PHResponse message (accepts null)
+     * @param paymentStatus StatusResponse status, or NO_STATUS if the response had no data
+     * @param dataMessage StatusResponse message (accepts null)
+     */
+    public static PayHereError fromResponse(int kind, int status, String message, int paymentStatus, String dataMessage) {
+        switch (kind){
+            case RESPONSE_NETWORK:
+                return new PayHereError(CODE_NETWORK, "Network Error", status, paymentStatus);
+
+            case RESPONSE_VALIDATION:
+                return new PayHereError(CODE_VALIDATION, "Parameter Validation Error", status, paymentStatus);
+
+            case RESPONSE_DATA:
+                return new PayHereError(CODE_INTENT_DATA, "Intent Data not Present", status, paymentStatus);
+
+            case RESPONSE_CANCELED:
+                return new PayHereError(CODE_CANCELED, messageOf(message, dataMessage, "Payment Canceled"), status, paymentStatus);
+
+            case RESPONSE_PAYMENT:
+                return new PayHereError(CODE_PAYMENT_DECLINED, messageOf(message, dataMessage, "Unknown Error Occurred."), status, paymentStatus);
+
+            case RESPONSE_UNKNOWN:
+                return new PayHereError(CODE_UNKNOWN, messageOf(message, dataMessage, "Unknown Error Occurred."), status, paymentStatus);
+
+            default:
+                // A response that completed, but with a payment status other than success/hold
+                boolean hasData = paymentStatus != NO_STATUS;
+                String code = hasData ? CODE_PAYMENT_DECLINED : CODE_UNKNOWN;
+                String fallback = hasData ? "Unknown Error Occurred." : "Unknown Error Occurred. PayHere Response was null.";
+                return new PayHereError(code, messageOf(message, dataMessage, fallback), status, paymentStatus);
+        }
+    }
+
+    /**
+     * Message of the response, falling back to the message of its data.
+     */
+    private static String messageOf(String message, String dataMessage, String fallback) {
+        if (message != null && !message.isEmpty()){
+            return message;
+        }
+        if (dataMessage != null && !dataMessage.isEmpty()){
+            return dataMessage;
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,48 @@
+package lk.payhere.core;
+
+/**
+ * An item of the payment object could not be read.
+ */
+public final class PayHereItemProcessingException extends Exception{
+    private String reason;
+
+    /**
+     * The key's size was not as expected
+     * @param key
+     * @param size measured size of the key
+     */
+    public PayHereItemProcessingException(String key, int size){
+        this.reason = String.format("Empty key encountered. Key string: '%s' Size: %d", key, size);
+    }
+
+    public PayHereItemProcessingException(){
+        this.reason = "Unknown Error Occurred while extracting Item data";
+    }
+
+    /**
+     * A key was present, but there was no number at the end of it.
+     * @param key
+     */
+    public PayHereItemProcessingException(String key){
+        this.reason = String.format("Could not find a number at the end of key, '%s'. Expected for example, 'some_key_1'.", key);
+    }
+
+    /**
+     * A key was present, but the character at the end could not be parsed to a number.
+     * @param key
+     * @param value handles null or scenarios.
+     */
+    public PayHereItemProcessingException(String key, Object value){
+        String valueContents = value == null ? "null" : value.toString();
+        this.reason = String.format("Could not parse value '%s' at the end of key '%s' to a number. Expected for example, 'some_key_1'.", valueContents, key);
+    }
+
+    public PayHereItemProcessingException setCustomReason(String reason){
+        this.reason = reason;
+        return this;
+    }
+
+    public String getReason(){
+        return reason;
+    }
+}
@@ -0,0 +1,63 @@
+package lk.payhere.core;
+
+/**
+ * A field of the payment object was missing or could not be converted.
+ */
+public final class PayHereKeyExtractionException extends Exception{
+
+    private String parameter;
+    private String type;
+    private Boolean keyExisted;
+
+    /**
+     * Exception for key that exists, but failed to cast to String
+     * @param key Key of value extracted (e.g. 'merchant_id')
+     */
+    public PayHereKeyExtractionException(String key){
+        this.parameter = key;
+        this.type = "String";
+        this.keyExisted = true;
+    }
+
+    /**
+     * Exception for key that may or may not exist, but failed to cast to String
+     * @param key Key of value extracted (e.g. 'merchant_id')
+     * @param keyExists Whether the key existed at point of extraction
+     */
+    public PayHereKeyExtractionException(String key, Boolean keyExists){
+        this.parameter = key;
+        this.type = "String";
+        this.keyExisted = keyExists;
+    }
+
+    /**
+     * Exception for key that exists, but failed to cast to type
+     * @param key Key of value extracted (e.g. 'merchant_id')
+     * @param type The type of the parameter expected but didn't exist (e.g. 'Boolean')
+     */
+    public PayHereKeyExtractionException(String key, String type){
+        this.parameter = key;
+        this.type = type;
+        this.keyExisted = true;
+    }
+    /**
+     * Exception for key that may or may not, but failed to cast to type
+     * @param key Key of value extracted (e.g. 'merchant_id')
+     * @param type The type of the parameter expected but didn't exist (e.g. 'Boolean')
+     * @param keyExists Whether the key existed at point of extraction
+     */
+    public PayHereKeyExtractionException(String key, String type, Boolean keyExists){
+        this.parameter = key;
+        this.type = type;
+        this.keyExisted = keyExists;
+    }
+
+    @Override
+    public String toString() {
+        return "PayHereKeyExtractionException{" +
+                "parameter='" + parameter + '\'' +
+                ", type='" + type + '\'' +
+                ", keyExisted=" + keyExisted +
+                '}';
+    }
+}
@@ -0,0 +1,167 @@
+package lk.payhere.core;
+
+/**
+ * Exact money arithmetic for payment amounts.
+ *
+ * Amounts are held as longs in millionths of the currency unit ("micros"),
+ * which is exact for every decimal amount with up to 6 fraction digits.
+ * Parsing does not allocate, and the scale of the currency is only applied
+ * once the currency is known.
+ */
+public final class PayHereMoney {
+
+    /** Micros per currency unit */
+    public static final long MICROS = 1000000L;
+    private static final int MICRO_DIGITS = 6;
+
+    /** Largest amount that can be held without overflow, in currency units */
+    private static final double MAX_UNITS = Long.MAX_VALUE / (double) MICROS;
+
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L};
+
+    private PayHereMoney() {}
+
+    /**
+     * Converts a JS number to micros, rounding away binary floating point error
+     * (e.g. 19.99 is 19.989999... as a double).
+     * @throws NumberFormatException Value is not finite or too large
+     */
+    public static long fromDouble(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= MAX_UNITS){
+            throw new NumberFormatException("Invalid amount: " + value);
+        }
+        return Math.round(value * MICROS);
+    }
+
+    /**
+     * Parses a decimal string (e.g. "50.00", "-1.5", " 10 ") to micros, without allocating.
+     * Falls back to double parsing for exponent notation.
+     * @throws NumberFormatException Not a number, or more than 6 significant fraction digits
+     */
+    public static long parse(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        if (start == end){
+            throw new NumberFormatException("Empty amount");
+        }
+
+        boolean negative = false;
+        char first = text.charAt(start);
+        if (first == '-' || first == '+'){
+            negative = first == '-';
+            start++;
+        }
+
+        long units = 0;
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean inFraction = false;
+        boolean anyDigit = false;
+
+        for (int i = start; i < end; i++){
+            char c = text.charAt(i);
+            if (c == '.' && !inFraction){
+                inFraction = true;
+                continue;
+            }
+            if (c == 'e' || c == 'E'){
+                return fromDouble(Double.parseDouble(text));
+            }
+
+            int digit = c - '0';
+            if (digit < 0 || digit > 9){
+                throw new NumberFormatException("Invalid amount: " + text);
+            }
+            anyDigit = true;
+
+            if (inFraction){
+                if (fractionDigits < MICRO_DIGITS){
+                    fraction = fraction * 10 + digit;
+                    fractionDigits++;
+                }
+                else if (digit != 0){
+                    throw new NumberFormatException("Too many decimal places: " + text);
+                }
+            }
+            else{
+                if (units > (Long.MAX_VALUE / MICROS - digit) / 10){
+                    throw new NumberFormatException("Amount too large: " + text);
+                }
+                units = units * 10 + digit;
+            }
+        }
+
+        if (!anyDigit){
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+
+        long micros = units * MICROS + fraction * POWERS_OF_TEN[MICRO_DIGITS - fractionDigits];
+        return negative ? -micros : micros;
+    }
+
+    /**
+     * Number of decimal places used by a currency (ISO 4217).
+     * Defaults to 2, which covers the currencies PayHere accepts.
+     */
+    public static int scaleOf(String currency) {
+        if (currency == null || currency.length() != 3){
+            return 2;
+        }
+        switch (currency.toUpperCase()){
+            case "JPY":
+            case "KRW":
+            case "VND":
+            case "CLP":
+            case "ISK":
+                return 0;
+            case "BHD":
+            case "IQD":
+            case "JOD":
+            case "KWD":
+            case "LYD":
+            case "OMR":
+            case "TND":
+                return 3;
+            default:
+                return 2;
+        }
+    }
+
+    /**
+     * @return Whether the amount has no more decimal places than the scale allows
+     */
+    public static boolean fitsScale(long micros, int scale) {
+        return micros % POWERS_OF_TEN[MICRO_DIGITS - scale] == 0;
+    }
+
+    /**
+     * @return The amount as the closest double, for the PayHere SDK models
+     */
+    public static double toDouble(long micros) {
+        return micros / (double) MICROS;
+    }
+
+    /**
+     * Formats micros as a plain decimal with the given scale (for error messages).
+     */
+    public static String format(long micros, int scale) {
+        StringBuilder builder = new StringBuilder();
+        if (micros < 0){
+            builder.append('-');
+            micros = -micros;
+        }
+        builder.append(micros / MICROS);
+        if (scale > 0){
+            long fraction = (micros % MICROS) / POWERS_OF_TEN[MICRO_DIGITS - scale];
+            String digits = Long.toString(fraction);
+            builder.append('.');
+            for (int i = digits.length(); i < scale; i++){
+                builder.append('0');
+            }
+            builder.append(digits);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package lk.payhere.core;
+
+import java.util.HashMap;
+
+import static lk.payhere.core.PaymentRequest.MODE_AUTHORIZATION;
+import static lk.payhere.core.PaymentRequest.MODE_ONETIME;
+import static lk.payhere.core.PaymentRequest.MODE_PREAPPROVAL;
+import static lk.payhere.core.PaymentRequest.MODE_RECURRING;
+
+/**
+ * Describes how one payment object key is read and applied to a request.
+ * Each field overrides the apply method matching its type.
+ */
+abstract class PaymentField {
+
+    static final int TYPE_STRING = 0;
+    static final int TYPE_AMOUNT = 1;
+    static final int TYPE_BOOLEAN = 2;
+
+    private static final int ONETIME = 1 << MODE_ONETIME;
+    private static final int RECURRING = 1 << MODE_RECURRING;
+    private static final int PREAPPROVAL = 1 << MODE_PREAPPROVAL;
+    private static final int AUTHORIZATION = 1 << MODE_AUTHORIZATION;
+    private static final int ALL_MODES = ONETIME | RECURRING | PREAPPROVAL | AUTHORIZATION;
+    private static final int NO_MODES = 0;
+
+    final String key;
+    final int type;
+    /** Modes the field is read in, as bits indexed by mode */
+    final int modes;
+    /** Modes the field must be present in, as bits indexed by mode */
+    final int requiredModes;
+    /** Position in FIELDS, used to track which required fields were seen */
+    int index;
+
+    PaymentField(String key, int type, int modes, int requiredModes){
+        this.key = key;
+        this.type = type;
+        this.modes = modes;
+        this.requiredModes = requiredModes;
+    }
+
+    /**
+     * Whether reading the field depends on the payment mode: it is not read in every mode,
+     * or it is an amount that is optional in some modes (optional amounts may be blank).
+     */
+    boolean dependsOnMode(){
+        return modes != ALL_MODES || (type == TYPE_AMOUNT && requiredModes != ALL_MODES);
+    }
+
+    void applyString(PaymentRequest r, String value){ throw new IllegalStateException(key); }
+    void applyAmount(PaymentRequest r, long micros){ throw new IllegalStateException(key); }
+    void applyBoolean(PaymentRequest r, boolean value){ throw new IllegalStateException(key); }
+
+    /**
+     * Every payment object field, with its type, the modes it applies to, the modes
+     * it is required in and its target field. Adding a field is a one-line change.
+     */
+    static final PaymentField[] FIELDS = {
+            new PaymentField(PaymentKey.sandbox,         TYPE_BOOLEAN, ALL_MODES, ALL_MODES) { void applyBoolean(PaymentRequest r, boolean v){ r.isSandbox = v; } },
+            new PaymentField(PaymentKey.merchantId,      TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.merchantId = v; } },
+            new PaymentField(PaymentKey.notifyUrl,       TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.notifyUrl = v; } },
+            new PaymentField(PaymentKey.currency,        TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.currency = v; } },
+            new PaymentField(PaymentKey.amount,          TYPE_AMOUNT,  ALL_MODES, ONETIME | RECURRING | AUTHORIZATION) { void applyAmount(PaymentRequest r, long v){ r.hasAmount = true; r.amount = v; } },
+            new PaymentField(PaymentKey.orderId,         TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.orderId = v; } },
+            new PaymentField(PaymentKey.items,           TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.itemsDescription = v; } },
+            new PaymentField(PaymentKey.recurrence,      TYPE_STRING,  RECURRING, RECURRING) { void applyString(PaymentRequest r, String v){ r.recurrence = v; } },
+            new PaymentField(PaymentKey.duration,        TYPE_STRING,  RECURRING, RECURRING) { void applyString(PaymentRequest r, String v){ r.duration = v; } },
+            new PaymentField(PaymentKey.startupFee,      TYPE_AMOUNT,  RECURRING, NO_MODES)  { void applyAmount(PaymentRequest r, long v){ r.hasStartupFee = true; r.startupFee = v; } },
+            new PaymentField(PaymentKey.customOne,       TYPE_STRING,  ALL_MODES, NO_MODES)  { void applyString(PaymentRequest r, String v){ r.custom1 = v; } },
+            new PaymentField(PaymentKey.customTwo,       TYPE_STRING,  ALL_MODES, NO_MODES)  { void applyString(PaymentRequest r, String v){ r.custom2 = v; } },
+            new PaymentField(PaymentKey.firstName,       TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.firstName = v; } },
+            new PaymentField(PaymentKey.lastName,        TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.lastName = v; } },
+            new PaymentField(PaymentKey.email,           TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.email = v; } },
+            new PaymentField(PaymentKey.phone,           TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.phone = v; } },
+            new PaymentField(PaymentKey.address,         TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.address = v; } },
+            new PaymentField(PaymentKey.city,            TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.city = v; } },
+            new PaymentField(PaymentKey.country,         TYPE_STRING,  ALL_MODES, ALL_MODES) { void applyString(PaymentRequest r, String v){ r.country = v; } },
+            new PaymentField(PaymentKey.deliveryAddress, TYPE_STRING,  ALL_MODES, NO_MODES)  { void applyString(PaymentRequest r, String v){ r.deliveryAddress = v; } },
+            new PaymentField(PaymentKey.deliveryCity,    TYPE_STRING,  ALL_MODES, NO_MODES)  { void applyString(PaymentRequest r, String v){ r.deliveryCity = v; } },
+            new PaymentField(PaymentKey.deliveryCountry, TYPE_STRING,  ALL_MODES, NO_MODES)  { void applyString(PaymentRequest r, String v){ r.deliveryCountry = v; } },
+    };
+
+    static final HashMap<String, PaymentField> FIELDS_BY_KEY = new HashMap<>();
+
+    static {
+        for (int i = 0; i < FIELDS.length; i++){
+            FIELDS[i].index = i;
+            FIELDS_BY_KEY.put(FIELDS[i].key, FIELDS[i]);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package lk.payhere.core;
+
+import java.util.List;
+
+/**
+ * One item of a payment.
+ */
+public final class PaymentItem {
+    String id;
+    String name;
+    int quantity;
+    /** Amount in micros (see PayHereMoney) */
+    long amount;
+
+    PaymentItem() {}
+
+    /**
+     * @param id Item number (accepts null)
+     * @param amount Amount of one item, in micros (see PayHereMoney)
+     */
+    public PaymentItem(String id, String name, int quantity, long amount) {
+        this.id = id;
+        this.name = name;
+        this.quantity = quantity;
+        this.amount = amount;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * @return Amount of one item, in micros (see PayHereMoney)
+     */
+    public long getAmount() {
+        return amount;
+    }
+
+    /**
+     * Items description for a list of items: their names, comma separated.
+     */
+    public static String describe(List<PaymentItem> items) {
+        StringBuilder builder = new StringBuilder();
+        for (PaymentItem item : items){
+            if (builder.length() > 0){
+                builder.append(", ");
+            }
+            builder.append(item.name);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,372 @@
+package lk.payhere.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a payment object given as JSON text, token by token.
+ *
+ * The JSON is streamed with Gson's JsonReader straight into a PaymentReader, so the
+ * payment is never held as a map or a tree. The result is the same as reading the
+ * equivalent JS object with startPayment: same fields, modes, conversions and errors.
+ * Amounts given as JSON numbers are converted from their text, never through a double.
+ *
+ * The text is read in a single pass. The mode depends on keys that may come anywhere
+ * in the object, so the few fields read differently per mode ('amount', 'startup_fee',
+ * 'recurrence', 'duration') are held back and read once the object has been read.
+ */
+public final class PaymentJsonReader {
+
+    private static final String ITEM_ID = "id";
+    private static final String ITEM_NAME = "name";
+    private static final String ITEM_QUANTITY = "quantity";
+    private static final String ITEM_AMOUNT = "amount";
+
+    /** A value held back until the mode is known */
+    private static final class Deferred {
+        final String key;
+        final JsonToken token;
+        /** Text of a string, number or boolean */
+        final String text;
+
+        Deferred(String key, JsonToken token, String text) {
+            this.key = key;
+            this.token = token;
+            this.text = text;
+        }
+
+        static Deferred read(JsonReader in, String key, JsonToken token) throws IOException {
+            switch (token){
+                case STRING:
+                case NUMBER:
+                    return new Deferred(key, token, in.nextString());
+                case BOOLEAN:
+                    return new Deferred(key, token, Boolean.toString(in.nextBoolean()));
+                case NULL:
+                    in.nextNull();
+                    return new Deferred(key, token, null);
+                default:
+                    in.skipValue();
+                    return new Deferred(key, token, null);
+            }
+        }
+
+        void readInto(PaymentReader reader) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+            switch (token){
+                case STRING:
+                    reader.string(key, text);
+                    break;
+                case NUMBER:
+                    reader.numberText(key, text);
+                    break;
+                case BOOLEAN:
+                    reader.bool(key, Boolean.parseBoolean(text));
+                    break;
+                case NULL:
+                    reader.nullValue(key);
+                    break;
+                case BEGIN_ARRAY:
+                    reader.array(key);
+                    break;
+                default:
+                    reader.object(key);
+                    break;
+            }
+        }
+    }
+
+    private PaymentJsonReader() {}
+
+    /**
+     * @param json Payment object as JSON text
+     * @param defaults Values for fields the JSON leaves out or sets to null, as for
+     *                 PaymentReader.readDefault (accepts null)
+     * @param errors If null, the first error is thrown. Otherwise every error is added to the list.
+     * @throws IOException The text is not a single well-formed JSON object
+     */
+    public static PaymentRequest parse(String json, Map<String, ?> defaults, List<String> errors) throws IOException, PayHereKeyExtractionException, PayHereItemProcessingException {
+        PaymentReader reader = new PaymentReader(PaymentRequest.MODE_ONETIME, errors);
+        ArrayList<Deferred> deferred = new ArrayList<>(4);
+        boolean preapprove = false;
+        boolean authorize = false;
+        List<PaymentItem> arrayItems = null;
+        String itemsDescription = null;
+
+        JsonReader in = open(json);
+        try {
+            in.beginObject();
+            while (in.hasNext()){
+                String key = in.nextName();
+                JsonToken token = in.peek();
+
+                if (PaymentKey.preapprove.equals(key) && token == JsonToken.BOOLEAN){
+                    preapprove = in.nextBoolean();
+                    continue;
+                }
+                if (PaymentKey.authorize.equals(key) && token == JsonToken.BOOLEAN){
+                    authorize = in.nextBoolean();
+                    continue;
+                }
+                if (PaymentReader.dependsOnMode(key)){
+                    deferred.add(Deferred.read(in, key, token));
+                    continue;
+                }
+                if (PaymentKey.items.equals(key) && token == JsonToken.BEGIN_ARRAY){
+                    arrayItems = readItems(in, errors);
+                    continue;
+                }
+                if (PaymentKey.itemsDescription.equals(key) && (token == JsonToken.STRING || token == JsonToken.NUMBER)){
+                    itemsDescription = token == JsonToken.STRING
+                            ? in.nextString()
+                            : PaymentValues.formatNumber(in.nextDouble());
+                    continue;
+                }
+
+                readValue(in, token, key, reader);
+            }
+            in.endObject();
+
+            if (in.peek() != JsonToken.END_DOCUMENT){
+                throw new MalformedJsonException("Unexpected content after the payment object");
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        boolean hasRecurrence = false;
+        boolean hasDuration = false;
+        for (Deferred value : deferred){
+            if (PaymentKey.recurrence.equals(value.key))
+                hasRecurrence = value.token != JsonToken.NULL;
+            else if (PaymentKey.duration.equals(value.key))
+                hasDuration = value.token != JsonToken.NULL;
+        }
+        reader.setMode(PaymentReader.mode(preapprove, authorize, hasRecurrence && hasDuration));
+        for (Deferred value : deferred){
+            value.readInto(reader);
+        }
+
+        if (arrayItems != null){
+            reader.string(PaymentKey.items, itemsDescription != null ? itemsDescription : PaymentItem.describe(arrayItems));
+        }
+
+        if (defaults != null){
+            for (Map.Entry<String, ?> entry : defaults.entrySet()){
+                reader.readDefault(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return reader.finish(arrayItems);
+    }
+
+    private static JsonReader open(String json) throws IOException {
+        if (json == null){
+            throw new MalformedJsonException("Payment JSON is null");
+        }
+        JsonReader in = new JsonReader(new StringReader(json));
+        if (in.peek() != JsonToken.BEGIN_OBJECT){
+            throw new MalformedJsonException("Payment JSON must be an object");
+        }
+        return in;
+    }
+
+    /**
+     * Passes the next value to the reader with the method for its type.
+     */
+    private static void readValue(JsonReader in, JsonToken token, String key, PaymentReader reader) throws IOException, PayHereKeyExtractionException, PayHereItemProcessingException {
+        switch (token){
+            case STRING:
+                reader.string(key, in.nextString());
+                break;
+            case NUMBER:
+                reader.numberText(key, in.nextString());
+                break;
+            case BOOLEAN:
+                reader.bool(key, in.nextBoolean());
+                break;
+            case NULL:
+                in.nextNull();
+                reader.nullValue(key);
+                break;
+            case BEGIN_ARRAY:
+                in.skipValue();
+                reader.array(key);
+                break;
+            default:
+                in.skipValue();
+                reader.object(key);
+                break;
+        }
+    }
+
+    /* MARK: Items array */
+
+    /**
+     * Reads an 'items' array of {id, name, quantity, amount} objects.
+     * 'id' is optional, the other fields are required.
+     * @param errors If null, the first error is thrown. Otherwise the first error is added
+     *               to the list and the items are dropped.
+     * @return Items in array order
+     */
+    private static List<PaymentItem> readItems(JsonReader in, List<String> errors) throws IOException, PayHereKeyExtractionException {
+        ArrayList<PaymentItem> items = new ArrayList<>();
+        PayHereKeyExtractionException error = null;
+
+        in.beginArray();
+        for (int i = 0; in.hasNext(); i++){
+            if (error != null){
+                in.skipValue();
+                continue;
+            }
+            try {
+                items.add(readItem(in, i));
+            }
+            catch(PayHereKeyExtractionException exc){
+                error = exc;
+            }
+        }
+        in.endArray();
+
+        if (error != null){
+            if (errors == null)
+                throw error;
+            errors.add(error.toString());
+            items.clear();
+        }
+        return items;
+    }
+
+    /**
+     * Reads one element of the 'items' array. The element is always consumed, even when
+     * it is rejected, so the rest of the payment can still be read.
+     */
+    private static PaymentItem readItem(JsonReader in, int index) throws IOException, PayHereKeyExtractionException {
+        JsonToken token = in.peek();
+        if (token != JsonToken.BEGIN_OBJECT){
+            in.skipValue();
+            throw new PayHereKeyExtractionException(PaymentKey.items + "[" + index + "]", "Object", token != JsonToken.NULL);
+        }
+
+        String id = null;
+        String name = null;
+        int quantity = 0;
+        long amount = 0;
+        boolean hasQuantity = false;
+        boolean hasAmount = false;
+        PayHereKeyExtractionException error = null;
+
+        in.beginObject();
+        while (in.hasNext()){
+            String key = in.nextName();
+            if (error != null){
+                in.skipValue();
+                continue;
+            }
+            try {
+                if (ITEM_ID.equals(key)){
+                    id = in.peek() == JsonToken.NULL ? skipNull(in) : readItemString(in, index, key);
+                }
+                else if (ITEM_NAME.equals(key)){
+                    name = readItemString(in, index, key);
+                }
+                else if (ITEM_QUANTITY.equals(key)){
+                    quantity = readItemQuantity(in, index);
+                    hasQuantity = true;
+                }
+                else if (ITEM_AMOUNT.equals(key)){
+                    amount = readItemAmount(in, index);
+                    hasAmount = true;
+                }
+                else{
+                    in.skipValue();
+                }
+            }
+            catch(PayHereKeyExtractionException exc){
+                error = exc;
+            }
+        }
+        in.endObject();
+
+        if (error != null)
+            throw error;
+        if (name == null)
+            throw new PayHereKeyExtractionException(itemFieldKey(index, ITEM_NAME), false);
+        if (!hasQuantity)
+            throw new PayHereKeyExtractionException(itemFieldKey(index, ITEM_QUANTITY), false);
+        if (!hasAmount)
+            throw new PayHereKeyExtractionException(itemFieldKey(index, ITEM_AMOUNT), false);
+
+        return new PaymentItem(id, name, quantity, amount);
+    }
+
+    private static String readItemString(JsonReader in, int index, String key) throws IOException, PayHereKeyExtractionException {
+        switch (requireItemField(in, index, key)){
+            case STRING:
+                return in.nextString();
+            case NUMBER:
+                return PaymentValues.formatNumber(in.nextDouble());
+            default:
+                in.skipValue();
+                throw new PayHereKeyExtractionException(itemFieldKey(index, key), true);
+        }
+    }
+
+    private static int readItemQuantity(JsonReader in, int index) throws IOException, PayHereKeyExtractionException {
+        String key = itemFieldKey(index, ITEM_QUANTITY);
+        switch (requireItemField(in, index, ITEM_QUANTITY)){
+            case NUMBER:
+                return PaymentValues.toInteger(key, in.nextDouble());
+            case STRING:
+                return PaymentValues.toInteger(key, in.nextString());
+            default:
+                in.skipValue();
+                throw new PayHereKeyExtractionException(key, "Integer", true);
+        }
+    }
+
+    /**
+     * @return Amount in micros (see PayHereMoney)
+     */
+    private static long readItemAmount(JsonReader in, int index) throws IOException, PayHereKeyExtractionException {
+        String key = itemFieldKey(index, ITEM_AMOUNT);
+        switch (requireItemField(in, index, ITEM_AMOUNT)){
+            case NUMBER:
+                return PaymentValues.toAmount(key, in.nextString());
+            case STRING:
+                return PaymentValues.toAmount(key, in.nextString());
+            default:
+                in.skipValue();
+                throw new PayHereKeyExtractionException(key, "Double", true);
+        }
+    }
+
+    /**
+     * @return Type of the item field
+     * @throws PayHereKeyExtractionException The field was null (the null is consumed)
+     */
+    private static JsonToken requireItemField(JsonReader in, int index, String key) throws IOException, PayHereKeyExtractionException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL){
+            in.nextNull();
+            throw new PayHereKeyExtractionException(itemFieldKey(index, key), "Object", true);
+        }
+        return token;
+    }
+
+    private static String skipNull(JsonReader in) throws IOException {
+        in.nextNull();
+        return null;
+    }
+
+    private static String itemFieldKey(int index, String key){
+        return PaymentKey.items + "[" + index + "]." + key;
+    }
+}
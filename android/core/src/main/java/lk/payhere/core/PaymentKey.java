@@ -0,0 +1,38 @@
+package lk.payhere.core;
+
+/**
+ * Keys of the payment object passed to startPayment.
+ */
+public final class PaymentKey {
+    public final static String sandbox = "sandbox";
+    public final static String merchantId = "merchant_id";
+    public final static String notifyUrl = "notify_url";
+    public final static String orderId = "order_id";
+    public final static String items = "items";
+    public final static String amount = "amount";
+    public final static String currency = "currency";
+    public final static String firstName = "first_name";
+    public final static String lastName = "last_name";
+    public final static String email = "email";
+    public final static String phone = "phone";
+    public final static String address = "address";
+    public final static String city = "city";
+    public final static String country = "country";
+    public final static String deliveryAddress = "delivery_address";
+    public final static String deliveryCity = "delivery_city";
+    public final static String deliveryCountry = "delivery_country";
+    public final static String customOne = "custom_1";
+    public final static String customTwo = "custom_2";
+    public final static String recurrence = "recurrence";
+    public final static String duration = "duration";
+    public final static String startupFee = "startup_fee";
+    public final static String preapprove = "preapprove";
+    public final static String authorize = "authorize";
+    public final static String prefixItemNumber = "item_number_";
+    public final static String prefixItemName = "item_name_";
+    public final static String prefixItemAmount = "amount_";
+    public final static String prefixItemQuantity = "quantity_";
+    public final static String itemsDescription = "items_description";
+
+    private PaymentKey(){}
+}
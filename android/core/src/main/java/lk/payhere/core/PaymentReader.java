@@ -0,0 +1,513 @@
+package lk.payhere.core;
+
+import java.util.List;
+import java.util.Map;
+
+import static lk.payhere.core.PaymentField.FIELDS;
+import static lk.payhere.core.PaymentField.FIELDS_BY_KEY;
+import static lk.payhere.core.PaymentField.TYPE_AMOUNT;
+import static lk.payhere.core.PaymentField.TYPE_BOOLEAN;
+import static lk.payhere.core.PaymentRequest.MODE_AUTHORIZATION;
+import static lk.payhere.core.PaymentRequest.MODE_ONETIME;
+import static lk.payhere.core.PaymentRequest.MODE_PREAPPROVAL;
+import static lk.payhere.core.PaymentRequest.MODE_RECURRING;
+
+/**
+ * Reads a payment object into a PaymentRequest, one value at a time.
+ *
+ * Values are passed in with their JS type (string, number, bool, nullValue, array, object),
+ * so a caller can walk its own map type without converting it first. Known fields are
+ * converted and applied through the field table, item keys ('item_name_1', ...) go to
+ * the item table. Required fields that were not seen are reported by finish().
+ *
+ * A reader builds one request and is not thread safe.
+ */
+public final class PaymentReader {
+
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_NUMBER = 2;
+    private static final int VALUE_BOOLEAN = 3;
+    /** Array or object */
+    private static final int VALUE_OTHER = 4;
+
+    private static final int ITEM_FIELD_NONE = -1;
+    private static final int ITEM_FIELD_NUMBER = 0;
+    private static final int ITEM_FIELD_NAME = 1;
+    private static final int ITEM_FIELD_QUANTITY = 2;
+    private static final int ITEM_FIELD_AMOUNT = 3;
+    private static final int[] ITEM_FIELD_PREFIX_LENGTH = {
+            PaymentKey.prefixItemNumber.length(),
+            PaymentKey.prefixItemName.length(),
+            PaymentKey.prefixItemQuantity.length(),
+            PaymentKey.prefixItemAmount.length()
+    };
+
+    private int modeBit;
+    private final PaymentRequest request;
+    private final List<String> errors;
+    private ItemTable itemTable;
+
+    /** Fields applied so far, as bits indexed by PaymentField.index */
+    private long seen;
+    /** Fields given as null, as bits indexed by PaymentField.index */
+    private long nulls;
+
+    /* The value being read, set by the typed read methods */
+    private int valueType;
+    private String stringValue;
+    private double numberValue;
+    /** Decimal text of numberValue, if the number was read as text */
+    private String numberText;
+    private boolean booleanValue;
+
+    /**
+     * @param mode One of the PaymentRequest.MODE_* constants (see mode())
+     * @param errors If null, the first error is thrown. Otherwise every error is added to the list.
+     */
+    public PaymentReader(int mode, List<String> errors) {
+        this.modeBit = 1 << mode;
+        this.request = new PaymentRequest(mode);
+        this.errors = errors;
+    }
+
+    /**
+     * Sets the mode of a reader created before the mode was known, for a caller that
+     * reads the payment object in one pass. Fields for which dependsOnMode(key) is true
+     * must only be read after this.
+     */
+    void setMode(int mode) {
+        this.modeBit = 1 << mode;
+        this.request.mode = mode;
+    }
+
+    /**
+     * @return Whether reading the key depends on the mode (see setMode)
+     */
+    static boolean dependsOnMode(String key) {
+        PaymentField field = FIELDS_BY_KEY.get(key);
+        return field != null && field.dependsOnMode();
+    }
+
+    /**
+     * Picks the payment mode from the flags and fields present in the payment object.
+     * @param preapprove 'preapprove' is true
+     * @param authorize 'authorize' is true
+     * @param recurring 'recurrence' and 'duration' are both present and not null
+     * @return One of the PaymentRequest.MODE_* constants
+     */
+    public static int mode(boolean preapprove, boolean authorize, boolean recurring) {
+        if (preapprove)
+            return MODE_PREAPPROVAL;
+        if (authorize)
+            return MODE_AUTHORIZATION;
+        if (recurring)
+            return MODE_RECURRING;
+        return MODE_ONETIME;
+    }
+
+    /**
+     * Picks the payment mode of a payment object held as a Map.
+     */
+    public static int mode(Map<String, ?> payment) {
+        return mode(Boolean.TRUE.equals(payment.get(PaymentKey.preapprove)),
+                Boolean.TRUE.equals(payment.get(PaymentKey.authorize)),
+                payment.get(PaymentKey.recurrence) != null && payment.get(PaymentKey.duration) != null);
+    }
+
+    /**
+     * Reads a payment object held as a Map (e.g. ReadableMap.toHashMap()).
+     * @param errors If null, the first error is thrown. Otherwise every error is added to the list.
+     */
+    public static PaymentRequest parse(Map<String, ?> payment, List<String> errors) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        PaymentReader reader = new PaymentReader(mode(payment), errors);
+        reader.read(payment);
+        return reader.finish(null);
+    }
+
+    public void string(String key, String value) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        if (value == null){
+            this.nullValue(key);
+            return;
+        }
+        this.valueType = VALUE_STRING;
+        this.stringValue = value;
+        this.read(key);
+    }
+
+    public void number(String key, double value) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        this.valueType = VALUE_NUMBER;
+        this.numberValue = value;
+        this.numberText = null;
+        this.read(key);
+    }
+
+    /**
+     * A number given as its decimal text, such as a JSON number. Amounts are parsed
+     * from the text, so they are exact. Other fields read it as the equivalent double.
+     * @throws NumberFormatException The text is not a number
+     */
+    public void numberText(String key, String text) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        this.valueType = VALUE_NUMBER;
+        this.numberValue = Double.parseDouble(text);
+        this.numberText = text;
+        this.read(key);
+    }
+
+    public void bool(String key, boolean value) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        this.valueType = VALUE_BOOLEAN;
+        this.booleanValue = value;
+        this.read(key);
+    }
+
+    public void nullValue(String key) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        this.valueType = VALUE_NULL;
+        this.read(key);
+    }
+
+    /**
+     * An array value. An 'items' array is decoded separately and passed to finish().
+     */
+    public void array(String key) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        if (PaymentKey.items.equals(key)){
+            return;
+        }
+        this.object(key);
+    }
+
+    public void object(String key) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        this.valueType = VALUE_OTHER;
+        this.read(key);
+    }
+
+    /**
+     * Reads an already extracted value, dispatching on its class.
+     */
+    public void value(String key, Object raw) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        if (raw == null)
+            this.nullValue(key);
+        else if (raw instanceof String)
+            this.string(key, (String) raw);
+        else if (raw instanceof Number)
+            this.number(key, ((Number) raw).doubleValue());
+        else if (raw instanceof Boolean)
+            this.bool(key, (Boolean) raw);
+        else if (raw instanceof List)
+            this.array(key);
+        else
+            this.object(key);
+    }
+
+    /**
+     * Reads every entry of a payment object held as a Map.
+     */
+    public void read(Map<String, ?> payment) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        for (Map.Entry<String, ?> entry : payment.entrySet()){
+            this.value(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a default value, used only if the payment object did not set the field
+     * (e.g. from the configure() template).
+     */
+    public void readDefault(String key, Object raw) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        PaymentField field = FIELDS_BY_KEY.get(key);
+        if (field != null && (seen & (1L << field.index)) == 0){
+            this.value(key, raw);
+        }
+    }
+
+    /**
+     * Reports required fields that were not seen, checks the amounts and returns the request.
+     * @param arrayItems Items decoded from an 'items' array, or null
+     */
+    public PaymentRequest finish(List<PaymentItem> arrayItems) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        for (PaymentField field : FIELDS){
+            long bit = 1L << field.index;
+            if (this.isRequired(field) && (seen & bit) == 0){
+                this.fail((nulls & bit) != 0
+                        ? new PayHereKeyExtractionException(field.key, "Object", true)
+                        : new PayHereKeyExtractionException(field.key, false));
+            }
+        }
+
+        if (itemTable != null){
+            itemTable.addTo(request.items);
+        }
+        if (arrayItems != null){
+            request.items.addAll(arrayItems);
+        }
+
+        this.checkAmounts();
+        return request;
+    }
+
+    /**
+     * Checks the amounts against the scale of the currency and totals the items.
+     * The item total may differ from the amount (shipping, tax, discounts), but
+     * it has to be representable.
+     */
+    private void checkAmounts() throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        int scale = PayHereMoney.scaleOf(request.currency);
+
+        if (request.hasAmount && !PayHereMoney.fitsScale(request.amount, scale)){
+            this.fail(scaleError(PaymentKey.amount, scale));
+        }
+        if (request.hasStartupFee && !PayHereMoney.fitsScale(request.startupFee, scale)){
+            this.fail(scaleError(PaymentKey.startupFee, scale));
+        }
+
+        if (request.items.isEmpty()){
+            return;
+        }
+
+        long itemTotal = 0;
+        boolean overflow = false;
+        for (PaymentItem item : request.items){
+            if (!PayHereMoney.fitsScale(item.amount, scale)){
+                this.failItem(new PayHereItemProcessingException().setCustomReason(String.format(
+                        "Amount of item '%s' has more than %d decimal places", item.name, scale)));
+            }
+            if (!overflow){
+                try {
+                    itemTotal = Math.addExact(itemTotal, Math.multiplyExact(item.amount, (long) item.quantity));
+                }
+                catch(ArithmeticException e){
+                    overflow = true;
+                    this.failItem(new PayHereItemProcessingException().setCustomReason(String.format(
+                            "Item total (sum of amount x quantity) is too large, at item '%s'", item.name)));
+                }
+            }
+        }
+
+        if (!overflow){
+            request.hasItemTotal = true;
+            request.itemTotal = itemTotal;
+        }
+    }
+
+    /**
+     * Applies the current value to the field or item it belongs to.
+     */
+    private void read(String key) throws PayHereKeyExtractionException, PayHereItemProcessingException {
+        if (key == null || key.isEmpty()){
+            return;
+        }
+
+        PaymentField field = FIELDS_BY_KEY.get(key);
+
+        if (field != null){
+            if ((field.modes & modeBit) == 0){
+                // Not used in this mode
+                return;
+            }
+            long bit = 1L << field.index;
+            if (valueType == VALUE_NULL){
+                // Reported by finish() if required
+                nulls |= bit;
+                return;
+            }
+            try {
+                if (this.applyField(field)){
+                    seen |= bit;
+                }
+            }
+            catch(PayHereKeyExtractionException exc){
+                this.fail(exc);
+                seen |= bit;
+            }
+            return;
+        }
+
+        int itemField = itemField(key);
+        if (itemField == ITEM_FIELD_NONE){
+            return;
+        }
+
+        if (itemTable == null){
+            itemTable = new ItemTable();
+        }
+        try {
+            PaymentItem item = itemTable.getOrCreate(getIndex(key, ITEM_FIELD_PREFIX_LENGTH[itemField]));
+            this.applyItemField(item, itemField, key);
+        }
+        catch(PayHereKeyExtractionException exc){
+            this.fail(exc);
+        }
+        catch(PayHereItemProcessingException exc){
+            this.failItem(exc);
+        }
+    }
+
+    /**
+     * Converts the current value and applies it with the field's setter.
+     * @return false if an optional value was blank and skipped
+     */
+    private boolean applyField(PaymentField field) throws PayHereKeyExtractionException {
+        switch (field.type){
+            case TYPE_AMOUNT:
+                if (valueType == VALUE_STRING && !this.isRequired(field) && stringValue.trim().isEmpty()){
+                    return false;
+                }
+                field.applyAmount(request, this.amountValue(field.key));
+                return true;
+            case TYPE_BOOLEAN:
+                field.applyBoolean(request, this.booleanValue(field.key));
+                return true;
+            default:
+                field.applyString(request, this.stringValue(field.key));
+                return true;
+        }
+    }
+
+    private void applyItemField(PaymentItem item, int field, String key) throws PayHereKeyExtractionException {
+        switch (field){
+            case ITEM_FIELD_NUMBER:
+                item.id = this.stringValue(key);
+                break;
+            case ITEM_FIELD_NAME:
+                item.name = this.stringValue(key);
+                break;
+            case ITEM_FIELD_QUANTITY:
+                item.quantity = this.integerValue(key);
+                break;
+            case ITEM_FIELD_AMOUNT:
+                item.amount = this.amountValue(key);
+                break;
+        }
+    }
+
+    private boolean isRequired(PaymentField field){
+        return (field.requiredModes & modeBit) != 0;
+    }
+
+    /* MARK: Conversions of the current value */
+
+    private String stringValue(String key) throws PayHereKeyExtractionException {
+        switch (valueType){
+            case VALUE_STRING:
+                return stringValue;
+            case VALUE_NUMBER:
+                return PaymentValues.formatNumber(numberValue);
+            case VALUE_BOOLEAN:
+                return Boolean.toString(booleanValue);
+            case VALUE_NULL:
+                throw new PayHereKeyExtractionException(key, "Object", true);
+            default:
+                throw new PayHereKeyExtractionException(key, true);
+        }
+    }
+
+    private int integerValue(String key) throws PayHereKeyExtractionException {
+        switch (valueType){
+            case VALUE_NUMBER:
+                return PaymentValues.toInteger(key, numberValue);
+            case VALUE_STRING:
+                return PaymentValues.toInteger(key, stringValue);
+            case VALUE_NULL:
+                throw new PayHereKeyExtractionException(key, "Object", true);
+            default:
+                throw new PayHereKeyExtractionException(key, "Integer", true);
+        }
+    }
+
+    /**
+     * @return Amount in micros (see PayHereMoney)
+     */
+    private long amountValue(String key) throws PayHereKeyExtractionException {
+        switch (valueType){
+            case VALUE_NUMBER:
+                return numberText != null
+                        ? PaymentValues.toAmount(key, numberText)
+                        : PaymentValues.toAmount(key, numberValue);
+            case VALUE_STRING:
+                return PaymentValues.toAmount(key, stringValue);
+            case VALUE_NULL:
+                throw new PayHereKeyExtractionException(key, "Object", true);
+            default:
+                throw new PayHereKeyExtractionException(key, "Double", true);
+        }
+    }
+
+    private boolean booleanValue(String key) throws PayHereKeyExtractionException {
+        switch (valueType){
+            case VALUE_BOOLEAN:
+                return booleanValue;
+            case VALUE_STRING:
+                return Boolean.parseBoolean(stringValue);
+            default:
+                throw new PayHereKeyExtractionException(key, "Boolean", true);
+        }
+    }
+
+    /* MARK: Item keys */
+
+    /**
+     * Classifies a key as one of the item fields by its prefix.
+     * Dispatches on the first character so non-item keys cost a single comparison.
+     * @return One of the ITEM_FIELD_* constants
+     */
+    private static int itemField(String key){
+        switch (key.charAt(0)){
+            case 'i':
+                if (key.startsWith(PaymentKey.prefixItemNumber))
+                    return ITEM_FIELD_NUMBER;
+                if (key.startsWith(PaymentKey.prefixItemName))
+                    return ITEM_FIELD_NAME;
+                return ITEM_FIELD_NONE;
+            case 'q':
+                return key.startsWith(PaymentKey.prefixItemQuantity) ? ITEM_FIELD_QUANTITY : ITEM_FIELD_NONE;
+            case 'a':
+                return key.startsWith(PaymentKey.prefixItemAmount) ? ITEM_FIELD_AMOUNT : ITEM_FIELD_NONE;
+            default:
+                return ITEM_FIELD_NONE;
+        }
+    }
+
+    /**
+     * Parses the decimal index that follows the prefix of an item key, in place.
+     * @param key Item key (e.g. 'item_name_12')
+     * @param prefixLength Length of the item prefix (e.g. 'item_name_')
+     * @return Non-negative index
+     * @throws PayHereItemProcessingException Suffix is empty, not a number or out of range
+     */
+    static int getIndex(String key, int prefixLength) throws PayHereItemProcessingException{
+        int length = key.length();
+        if (prefixLength >= length){
+            throw new PayHereItemProcessingException(key);
+        }
+
+        int index = 0;
+        for (int i = prefixLength; i < length; i++){
+            int digit = key.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || index > (Integer.MAX_VALUE - digit) / 10){
+                throw new PayHereItemProcessingException(key, key.substring(prefixLength));
+            }
+            index = index * 10 + digit;
+        }
+
+        return index;
+    }
+
+    /* MARK: Errors */
+
+    /**
+     * Throws the error, or adds it to the list if errors are being collected.
+     */
+    private void fail(PayHereKeyExtractionException exc) throws PayHereKeyExtractionException{
+        if (errors == null)
+            throw exc;
+        errors.add(exc.toString());
+    }
+
+    private void failItem(PayHereItemProcessingException exc) throws PayHereItemProcessingException{
+        if (errors == null)
+            throw exc;
+        errors.add(exc.getReason());
+    }
+
+    private static PayHereKeyExtractionException scaleError(String key, int scale){
+        return new PayHereKeyExtractionException(key, "Amount with at most " + scale + " decimal places", true);
+    }
+}
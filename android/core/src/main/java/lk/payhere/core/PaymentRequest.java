@@ -0,0 +1,199 @@
+package lk.payhere.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A payment object read and checked by PaymentReader, ready to be turned into a PayHere SDK request.
+ * Amounts are in micros (see PayHereMoney).
+ */
+public final class PaymentRequest {
+
+    public static final int MODE_ONETIME = 0;
+    public static final int MODE_RECURRING = 1;
+    public static final int MODE_PREAPPROVAL = 2;
+    public static final int MODE_AUTHORIZATION = 3;
+
+    int mode;
+    boolean isSandbox;
+    String merchantId;
+    String notifyUrl;
+    String currency;
+    String orderId;
+    String itemsDescription;
+    boolean hasAmount;
+    long amount;
+    String recurrence;
+    String duration;
+    boolean hasStartupFee;
+    long startupFee;
+    String custom1;
+    String custom2;
+    String firstName;
+    String lastName;
+    String email;
+    String phone;
+    String address;
+    String city;
+    String country;
+    String deliveryAddress;
+    String deliveryCity;
+    String deliveryCountry;
+    final ArrayList<PaymentItem> items = new ArrayList<>();
+    boolean hasItemTotal;
+    long itemTotal;
+
+    PaymentRequest(int mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * @return Name of a MODE_* constant ('onetime', 'recurring', 'preapproval' or 'authorization')
+     */
+    public static String modeName(int mode) {
+        switch (mode){
+            case MODE_RECURRING:
+                return "recurring";
+            case MODE_PREAPPROVAL:
+                return "preapproval";
+            case MODE_AUTHORIZATION:
+                return "authorization";
+            default:
+                return "onetime";
+        }
+    }
+
+    /**
+     * @return One of the MODE_* constants
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    public boolean isSandbox() {
+        return isSandbox;
+    }
+
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public String getNotifyUrl() {
+        return notifyUrl;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getItemsDescription() {
+        return itemsDescription;
+    }
+
+    /**
+     * @return Whether an amount was given. Preapprovals may not have one.
+     */
+    public boolean hasAmount() {
+        return hasAmount;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    /**
+     * Recurring payments only.
+     */
+    public String getRecurrence() {
+        return recurrence;
+    }
+
+    /**
+     * Recurring payments only.
+     */
+    public String getDuration() {
+        return duration;
+    }
+
+    public boolean hasStartupFee() {
+        return hasStartupFee;
+    }
+
+    public long getStartupFee() {
+        return startupFee;
+    }
+
+    public String getCustom1() {
+        return custom1;
+    }
+
+    public String getCustom2() {
+        return custom2;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public String getDeliveryAddress() {
+        return deliveryAddress;
+    }
+
+    public String getDeliveryCity() {
+        return deliveryCity;
+    }
+
+    public String getDeliveryCountry() {
+        return deliveryCountry;
+    }
+
+    /**
+     * @return Whether the payment has items, and their total could be computed
+     */
+    public boolean hasItemTotal() {
+        return hasItemTotal;
+    }
+
+    /**
+     * @return Sum of amount x quantity over the items. Not checked against the amount,
+     *         which may include shipping, tax or discounts.
+     */
+    public long getItemTotal() {
+        return itemTotal;
+    }
+
+    /**
+     * @return Items in order: legacy 'item_name_N' style items by index, then the 'items' array
+     */
+    public List<PaymentItem> getItems() {
+        return items;
+    }
+}
@@ -0,0 +1,144 @@
+package lk.payhere.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Status of the latest payment for an order, as returned by the PayHere Retrieval API.
+ * String fields are null when the API did not return them.
+ */
+public final class PaymentStatus {
+
+    private final boolean found;
+    private final String message;
+    private final long paymentNo;
+    private final String orderId;
+    private final String date;
+    private final String status;
+    private final String currency;
+    private final double amount;
+    private final String method;
+    private final String cardHolderName;
+    private final String cardNo;
+
+    private PaymentStatus(boolean found, String message, long paymentNo, String orderId, String date, String status,
+                          String currency, double amount, String method, String cardHolderName, String cardNo) {
+        this.found = found;
+        this.message = message;
+        this.paymentNo = paymentNo;
+        this.orderId = orderId;
+        this.date = date;
+        this.status = status;
+        this.currency = currency;
+        this.amount = amount;
+        this.method = method;
+        this.cardHolderName = cardHolderName;
+        this.cardNo = cardNo;
+    }
+
+    /**
+     * Parses a Retrieval API response body.
+     * The API lists the payments of the order newest first, so the first one is used.
+     * @throws IllegalArgumentException The body is not a Retrieval API response
+     */
+    public static PaymentStatus parse(String body) {
+        JsonObject root;
+        try {
+            root = new JsonParser().parse(body).getAsJsonObject();
+        }
+        catch(RuntimeException e){
+            throw new IllegalArgumentException("Invalid payment status response", e);
+        }
+
+        String message = string(root, "msg");
+        JsonElement data = root.get("data");
+        if (intValue(root, "status") <= 0 || data == null || !data.isJsonArray() || ((JsonArray) data).size() == 0){
+            return new PaymentStatus(false, message, 0, null, null, null, null, 0, null, null, null);
+        }
+
+        JsonObject payment = ((JsonArray) data).get(0).getAsJsonObject();
+        JsonElement method = payment.get("payment_method");
+        JsonObject paymentMethod = method != null && method.isJsonObject() ? method.getAsJsonObject() : new JsonObject();
+
+        return new PaymentStatus(
+                true,
+                message,
+                payment.has("payment_id") ? payment.get("payment_id").getAsLong() : 0,
+                string(payment, "order_id"),
+                string(payment, "date"),
+                string(payment, "status"),
+                string(payment, "currency"),
+                payment.has("amount") ? payment.get("amount").getAsDouble() : 0,
+                string(paymentMethod, "method"),
+                string(paymentMethod, "card_customer_name"),
+                string(paymentMethod, "card_no"));
+    }
+
+    private static String string(JsonObject object, String key) {
+        JsonElement element = object.get(key);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static int intValue(JsonObject object, String key) {
+        JsonElement element = object.get(key);
+        return element == null || element.isJsonNull() ? 0 : element.getAsInt();
+    }
+
+    /**
+     * @return Whether the order has a payment. The other fields are empty if not.
+     */
+    public boolean isFound() {
+        return found;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getPaymentNo() {
+        return paymentNo;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * @return Payment status (e.g. 'RECEIVED', 'AUTHORIZED', 'REFUNDED')
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * @return Payment method (e.g. 'VISA')
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    public String getCardHolderName() {
+        return cardHolderName;
+    }
+
+    /**
+     * @return Masked card number (e.g. '************1292')
+     */
+    public String getCardNo() {
+        return cardNo;
+    }
+}
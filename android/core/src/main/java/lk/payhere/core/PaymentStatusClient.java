@@ -0,0 +1,399 @@
+package lk.payhere.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries the PayHere Retrieval API for the status of an order.
+ *
+ * Concurrent queries for the same order share one request. Failed requests
+ * (network errors, 5xx and 429 responses) are retried with exponential backoff,
+ * and successful results are cached for a short time.
+ *
+ * The Retrieval API needs an OAuth access token, which must be obtained by the
+ * merchant's server: the app secret must never be shipped in the app.
+ */
+public final class PaymentStatusClient {
+
+    static final String SEARCH_PATH = "merchant/v1/payment/search?order_id=";
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 500;
+    public static final long DEFAULT_CACHE_TTL_MS = 5000;
+
+    /**
+     * Performs a GET request.
+     */
+    public interface Transport {
+        /**
+         * @param authorization Value of the Authorization header
+         * @throws IOException The request failed before a response was received
+         */
+        Response get(String url, String authorization) throws IOException;
+    }
+
+    public static final class Response {
+        final int code;
+        final String body;
+
+        public Response(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+
+    public interface Listener {
+        void onStatus(PaymentStatus status);
+
+        /**
+         * @param error PaymentStatusException for error responses, IOException for network failures,
+         *              RejectedExecutionException if the client or its executor was shut down
+         */
+        void onError(Exception error);
+    }
+
+    /**
+     * Transport over HttpURLConnection.
+     */
+    public static final Transport HTTP = new Transport() {
+        @Override
+        public Response get(String url, String authorization) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            try {
+                connection.setConnectTimeout(10000);
+                connection.setReadTimeout(10000);
+                connection.setRequestProperty("Authorization", authorization);
+                connection.setRequestProperty("Accept", "application/json");
+
+                int code = connection.getResponseCode();
+                InputStream stream = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                return new Response(code, stream == null ? "" : readFully(stream));
+            }
+            finally {
+                connection.disconnect();
+            }
+        }
+    };
+
+    /**
+     * A request in flight, with everyone waiting for it. Each attempt runs on the
+     * executor; retries are scheduled on the retry scheduler, which only hands the
+     * next attempt back to the executor, so no thread sleeps through the backoff.
+     */
+    private final class Query implements Runnable {
+        final String key;
+        final String url;
+        final String authorization;
+        final ArrayList<Listener> listeners = new ArrayList<>();
+        int attempt = 0;
+        long backoffMs = initialBackoffMs;
+        /** Waiting on the retry scheduler. Guarded by lock. */
+        boolean retrying = false;
+
+        Query(String key, String url, String authorization) {
+            this.key = key;
+            this.url = url;
+            this.authorization = authorization;
+        }
+
+        @Override
+        public void run() {
+            attempt++;
+            try {
+                Response response = transport.get(url, authorization);
+                if (response.code == HttpURLConnection.HTTP_OK){
+                    PaymentStatus status;
+                    try {
+                        status = PaymentStatus.parse(response.body);
+                    }
+                    catch(IllegalArgumentException e){
+                        throw new PaymentStatusException(response.code, e.getMessage());
+                    }
+                    complete(this, status, null);
+                    return;
+                }
+
+                boolean retryable = response.code >= 500 || response.code == 429;
+                if (!retryable || attempt >= maxAttempts){
+                    throw new PaymentStatusException(response.code, "Payment status request failed with HTTP " + response.code);
+                }
+            }
+            catch(IOException e){
+                if (attempt >= maxAttempts){
+                    complete(this, null, e);
+                    return;
+                }
+            }
+            catch(Exception e){
+                complete(this, null, e);
+                return;
+            }
+
+            final Query query = this;
+            long delayMs = backoffMs;
+            backoffMs *= 2;
+            try {
+                synchronized (lock){
+                    retryScheduler().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (lock){
+                                query.retrying = false;
+                            }
+                            submit(query);
+                        }
+                    }, delayMs, TimeUnit.MILLISECONDS);
+                    retrying = true;
+                }
+            }
+            catch(RejectedExecutionException e){
+                complete(this, null, e);
+            }
+        }
+    }
+
+    private static final class Cached {
+        final PaymentStatus status;
+        final long atNanos;
+
+        Cached(PaymentStatus status, long atNanos) {
+            this.status = status;
+            this.atNanos = atNanos;
+        }
+    }
+
+    private final Transport transport;
+    private final Executor executor;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long cacheTtlNanos;
+
+    /** Guards inFlight, cache, retryScheduler and closed */
+    private final Object lock = new Object();
+    private final HashMap<String, Query> inFlight = new HashMap<>();
+    private final HashMap<String, Cached> cache = new HashMap<>();
+    private ScheduledExecutorService retryScheduler = null;
+    private boolean closed = false;
+
+    /**
+     * @param executor Runs the requests
+     */
+    public PaymentStatusClient(Executor executor) {
+        this(HTTP, executor, DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MS, DEFAULT_CACHE_TTL_MS);
+    }
+
+    /**
+     * @param maxAttempts Attempts per query, including the first
+     * @param initialBackoffMs Delay before the first retry, doubled for every further retry
+     * @param cacheTtlMs How long a result is reused, or 0 to disable the cache
+     */
+    public PaymentStatusClient(Transport transport, Executor executor, int maxAttempts, long initialBackoffMs, long cacheTtlMs) {
+        this.transport = transport;
+        this.executor = executor;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(cacheTtlMs);
+    }
+
+    /**
+     * Queries the status of the latest payment for an order.
+     * The listener is called on an executor thread, or right away for a cached result
+     * or when the request cannot be started.
+     * Queries only share requests and results when they use the same access token.
+     * @param baseUrl PayHere server root, ending with '/' (see PayHereApi.baseUrl)
+     * @param accessToken OAuth access token, obtained by the merchant's server
+     */
+    public void getStatus(String baseUrl, String orderId, String accessToken, Listener listener) {
+        final String url;
+        try {
+            url = baseUrl + SEARCH_PATH + URLEncoder.encode(orderId, "UTF-8");
+        }
+        catch(UnsupportedEncodingException e){
+            throw new IllegalStateException(e);
+        }
+        String key = url + "\n" + tokenHash(accessToken);
+
+        PaymentStatus cachedStatus = null;
+        Query query = null;
+
+        synchronized (lock){
+            Cached cached = cache.get(key);
+            if (cached != null && System.nanoTime() - cached.atNanos < cacheTtlNanos){
+                cachedStatus = cached.status;
+            }
+            else if (inFlight.containsKey(key)){
+                inFlight.get(key).listeners.add(listener);
+                return;
+            }
+            else{
+                query = new Query(key, url, "Bearer " + accessToken);
+                query.listeners.add(listener);
+                inFlight.put(key, query);
+            }
+        }
+
+        if (query == null){
+            listener.onStatus(cachedStatus);
+            return;
+        }
+
+        submit(query);
+    }
+
+    /**
+     * Stops the retry scheduler. Queries waiting for a retry fail with a
+     * RejectedExecutionException, and so do later queries.
+     * Does not shut down the executor.
+     */
+    public void close() {
+        ScheduledExecutorService scheduler;
+        ArrayList<Query> waiting = new ArrayList<>();
+        synchronized (lock){
+            closed = true;
+            scheduler = retryScheduler;
+            retryScheduler = null;
+            for (Query query : inFlight.values()){
+                if (query.retrying){
+                    waiting.add(query);
+                }
+            }
+        }
+        if (scheduler != null){
+            scheduler.shutdownNow();
+        }
+        for (Query query : waiting){
+            complete(query, null, new RejectedExecutionException("PaymentStatusClient is closed"));
+        }
+    }
+
+    /**
+     * Runs the next attempt on the executor, or fails the query if the client was
+     * closed or the executor no longer accepts work (e.g. it was shut down).
+     */
+    private void submit(Query query) {
+        try {
+            synchronized (lock){
+                if (closed){
+                    throw new RejectedExecutionException("PaymentStatusClient is closed");
+                }
+            }
+            executor.execute(query);
+        }
+        catch(RejectedExecutionException e){
+            complete(query, null, e);
+        }
+    }
+
+    /**
+     * Ends a query and notifies everyone waiting for it, unless it has already ended.
+     */
+    private void complete(Query query, PaymentStatus status, Exception error) {
+        ArrayList<Listener> listeners;
+        synchronized (lock){
+            if (inFlight.get(query.key) != query){
+                return;
+            }
+            inFlight.remove(query.key);
+            if (status != null && cacheTtlNanos > 0){
+                long now = System.nanoTime();
+                pruneCache(now);
+                cache.put(query.key, new Cached(status, now));
+            }
+            listeners = query.listeners;
+        }
+
+        for (Listener listener : listeners){
+            if (status != null)
+                listener.onStatus(status);
+            else
+                listener.onError(error);
+        }
+    }
+
+    /**
+     * Called with lock held.
+     */
+    private ScheduledExecutorService retryScheduler() {
+        if (closed){
+            throw new RejectedExecutionException("PaymentStatusClient is closed");
+        }
+        if (retryScheduler == null){
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "PayHere-status-retry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setKeepAliveTime(10, TimeUnit.SECONDS);
+            scheduler.allowCoreThreadTimeOut(true);
+            retryScheduler = scheduler;
+        }
+        return retryScheduler;
+    }
+
+    /**
+     * Hashes the access token for use in cache keys, so tokens are not kept in memory
+     * longer than their requests.
+     */
+    private static String tokenHash(String accessToken) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(String.valueOf(accessToken).getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest){
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+        catch(UnsupportedEncodingException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Drops expired results, so the cache only holds recently queried orders.
+     */
+    private void pruneCache(long now) {
+        Iterator<Cached> iterator = cache.values().iterator();
+        while (iterator.hasNext()){
+            if (now - iterator.next().atNanos >= cacheTtlNanos){
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String readFully(InputStream stream) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1){
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        }
+        finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package lk.payhere.core;
+
+/**
+ * The PayHere Retrieval API answered with an error status.
+ */
+public final class PaymentStatusException extends Exception {
+
+    private final int httpStatus;
+
+    public PaymentStatusException(int httpStatus, String message) {
+        super(message);
+        this.httpStatus = httpStatus;
+    }
+
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+}
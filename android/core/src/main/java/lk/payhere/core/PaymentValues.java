@@ -0,0 +1,73 @@
+package lk.payhere.core;
+
+/**
+ * Conversions from JS values to payment field values.
+ * JS numbers arrive as doubles, so every conversion takes a double or a String.
+ */
+public final class PaymentValues {
+
+    private PaymentValues() {}
+
+    /**
+     * Formats a number for a String field.
+     * Integral numbers are formatted without a fraction (1 rather than 1.0).
+     */
+    public static String formatNumber(double value) {
+        long longValue = (long) value;
+        return longValue == value ? Long.toString(longValue) : Double.toString(value);
+    }
+
+    /**
+     * @param key Key the value was stored under (for error reporting)
+     * @throws PayHereKeyExtractionException Value is not integral
+     */
+    public static int toInteger(String key, double value) throws PayHereKeyExtractionException {
+        int intValue = (int) value;
+        if (intValue != value){
+            throw new PayHereKeyExtractionException(key, "Integer", true);
+        }
+        return intValue;
+    }
+
+    /**
+     * @param key Key the value was stored under (for error reporting)
+     * @throws PayHereKeyExtractionException Value is not a decimal integer
+     */
+    public static int toInteger(String key, String value) throws PayHereKeyExtractionException {
+        try {
+            return Integer.parseInt(value.trim());
+        }
+        catch(NumberFormatException e){
+            throw new PayHereKeyExtractionException(key, "Integer", true);
+        }
+    }
+
+    /**
+     * @param key Key the value was stored under (for error reporting)
+     * @return Amount in micros (see PayHereMoney)
+     * @throws PayHereKeyExtractionException Value is not finite or too large
+     */
+    public static long toAmount(String key, double value) throws PayHereKeyExtractionException {
+        try {
+            return PayHereMoney.fromDouble(value);
+        }
+        catch(NumberFormatException e){
+            throw new PayHereKeyExtractionException(key, "Double", true);
+        }
+    }
+
+    /**
+     * Parses an amount exactly.
+     * @param key Key the value was stored under (for error reporting)
+     * @return Amount in micros (see PayHereMoney)
+     * @throws PayHereKeyExtractionException Value is not a decimal number
+     */
+    public static long toAmount(String key, String value) throws PayHereKeyExtractionException {
+        try {
+            return PayHereMoney.parse(value);
+        }
+        catch(NumberFormatException e){
+            throw new PayHereKeyExtractionException(key, "Double", true);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package lk.payhere.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void bucketsByUpperBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(MS);
+        histogram.record(MS + 1);
+        histogram.record(3 * MS);
+        histogram.record(TimeUnit.HOURS.toNanos(1));
+
+        assertEquals(4, histogram.getCount());
+        assertEquals(1, histogram.getBucketValue(0));
+        assertEquals(1, histogram.getBucketValue(1));
+        assertEquals(1, histogram.getBucketValue(2));
+        assertEquals(1, histogram.getBucketValue(histogram.getBucketCount() - 1));
+        assertEquals(Long.MAX_VALUE, histogram.getBucketBoundMs(histogram.getBucketCount() - 1));
+    }
+
+    @Test
+    public void estimatesPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileBoundMs(50));
+
+        for (int i = 0; i < 90; i++){
+            histogram.record(20 * MS);
+        }
+        for (int i = 0; i < 10; i++){
+            histogram.record(400 * MS);
+        }
+
+        assertEquals(25, histogram.getPercentileBoundMs(50));
+        assertEquals(25, histogram.getPercentileBoundMs(90));
+        assertEquals(500, histogram.getPercentileBoundMs(99));
+    }
+
+    @Test
+    public void countsEveryConcurrentRecord() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++){
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++){
+                        histogram.record(i % 100 * MS);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads){
+            thread.join();
+        }
+
+        long inBuckets = 0;
+        for (int i = 0; i < histogram.getBucketCount(); i++){
+            inBuckets += histogram.getBucketValue(i);
+        }
+        assertEquals(40000, histogram.getCount());
+        assertEquals(40000, inBuckets);
+    }
+}
@@ -0,0 +1,26 @@
+package lk.payhere.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PayHereApiTest {
+
+    @Test
+    public void usesTheServerOfTheCheckoutUrl() {
+        assertEquals("https://sandbox.payhere.lk/", PayHereApi.baseUrl("https://sandbox.payhere.lk/pay/"));
+        assertEquals("https://www.payhere.lk/", PayHereApi.baseUrl("https://www.payhere.lk/"));
+        assertEquals("http://127.0.0.1:8080/", PayHereApi.baseUrl("http://127.0.0.1:8080"));
+    }
+
+    @Test
+    public void rejectsRelativeUrls() {
+        try {
+            PayHereApi.baseUrl("pay/");
+            fail("Expected a relative URL to be rejected");
+        }
+        catch(IllegalArgumentException expected){
+        }
+    }
+}
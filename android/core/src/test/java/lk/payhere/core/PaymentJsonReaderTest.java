@@ -0,0 +1,198 @@
+package lk.payhere.core;
+
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PaymentJsonReaderTest {
+
+    @Test
+    public void readsSameRequestAsMap() throws Exception {
+        LinkedHashMap<String, Object> payment = onetimePayment();
+        payment.put(PaymentKey.customOne, 42.0);
+
+        PaymentRequest fromMap = PaymentReader.parse(payment, null);
+        PaymentRequest fromJson = PaymentJsonReader.parse(json(payment), null, null);
+
+        assertEquals(fromMap.getMode(), fromJson.getMode());
+        assertEquals(fromMap.isSandbox(), fromJson.isSandbox());
+        assertEquals(fromMap.getMerchantId(), fromJson.getMerchantId());
+        assertEquals(fromMap.getOrderId(), fromJson.getOrderId());
+        assertEquals(fromMap.getItemsDescription(), fromJson.getItemsDescription());
+        assertEquals(fromMap.getAmount(), fromJson.getAmount());
+        assertEquals("42", fromJson.getCustom1());
+        assertEquals(fromMap.getCountry(), fromJson.getCountry());
+    }
+
+    @Test
+    public void picksModeFromKeysAfterTheFields() throws Exception {
+        LinkedHashMap<String, Object> payment = onetimePayment();
+        payment.put(PaymentKey.startupFee, 500.0);
+        payment.put(PaymentKey.recurrence, "1 Month");
+        payment.put(PaymentKey.duration, "1 Year");
+
+        PaymentRequest recurring = PaymentJsonReader.parse(json(payment), null, null);
+        assertEquals(PaymentRequest.MODE_RECURRING, recurring.getMode());
+        assertEquals("1 Month", recurring.getRecurrence());
+        assertEquals(500 * PayHereMoney.MICROS, recurring.getStartupFee());
+
+        payment.put(PaymentKey.authorize, true);
+        assertEquals(PaymentRequest.MODE_AUTHORIZATION, PaymentJsonReader.parse(json(payment), null, null).getMode());
+
+        payment.remove(PaymentKey.amount);
+        payment.put(PaymentKey.preapprove, true);
+        PaymentRequest preapproval = PaymentJsonReader.parse(json(payment), null, null);
+        assertEquals(PaymentRequest.MODE_PREAPPROVAL, preapproval.getMode());
+        assertEquals(null, preapproval.getRecurrence());
+    }
+
+    @Test
+    public void readsBlankAmountOfPreapprovalGivenBeforeTheFlag() throws Exception {
+        LinkedHashMap<String, Object> payment = onetimePayment();
+        payment.put(PaymentKey.amount, "");
+        payment.put(PaymentKey.preapprove, true);
+
+        PaymentRequest request = PaymentJsonReader.parse(json(payment), null, null);
+        assertEquals(PaymentRequest.MODE_PREAPPROVAL, request.getMode());
+        assertEquals(false, request.hasAmount());
+
+        payment.remove(PaymentKey.preapprove);
+        List<String> errors = new ArrayList<>();
+        PaymentJsonReader.parse(json(payment), null, errors);
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void readsItemsArray() throws Exception {
+        LinkedHashMap<String, Object> payment = onetimePayment();
+        payment.put(PaymentKey.items, Arrays.asList(
+                item("A-1", "First", 2.0, "300"),
+                item(null, "Second", "1", 400.0)));
+
+        PaymentRequest request = PaymentJsonReader.parse(json(payment), null, null);
+        List<PaymentItem> items = request.getItems();
+
+        assertEquals(2, items.size());
+        assertEquals("A-1", items.get(0).getId());
+        assertEquals(2, items.get(0).getQuantity());
+        assertEquals(300 * PayHereMoney.MICROS, items.get(0).getAmount());
+        assertNull(items.get(1).getId());
+        assertEquals("First, Second", request.getItemsDescription());
+    }
+
+    @Test
+    public void readsNumberAmountsWithoutRounding() throws Exception {
+        LinkedHashMap<String, Object> payment = onetimePayment();
+        payment.put(PaymentKey.items, Collections.singletonList(item(null, "Only", 1.0, "ITEM_AMOUNT")));
+        // Too many digits for a double: 1234567890123.45 is stored as 1234567890123.449951...
+        String json = json(payment)
+                .replace("\"1000.00\"", "1234567890123.45")
+                .replace("\"ITEM_AMOUNT\"", "1234567890123.45");
+
+        PaymentRequest request = PaymentJsonReader.parse(json, null, null);
+
+        assertEquals(1234567890123450000L, request.getAmount());
+        assertEquals(1234567890123450000L, request.getItems().get(0).getAmount());
+    }
+
+    @Test
+    public void prefersItemsDescriptionWhereverItIs() throws Exception {
+        LinkedHashMap<String, Object> payment = new LinkedHashMap<>();
+        payment.put(PaymentKey.itemsDescription, "Order of one");
+        payment.putAll(onetimePayment());
+        payment.put(PaymentKey.items, Collections.singletonList(item(null, "Only", 1.0, "1000")));
+
+        assertEquals("Order of one", PaymentJsonReader.parse(json(payment), null, null).getItemsDescription());
+    }
+
+    @Test
+    public void reportsItemErrorsAndKeepsReading() throws Exception {
+        LinkedHashMap<String, Object> payment = onetimePayment();
+        payment.put(PaymentKey.items, Arrays.asList(item(null, null, 1.0, "1000"), "not an item"));
+        payment.put(PaymentKey.email, null);
+
+        List<String> errors = new ArrayList<>();
+        PaymentJsonReader.parse(json(payment), null, errors);
+
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(0).contains("items[0].name"));
+        assertTrue(errors.get(1).contains(PaymentKey.email));
+    }
+
+    @Test
+    public void fillsMissingFieldsFromDefaults() throws Exception {
+        LinkedHashMap<String, Object> payment = onetimePayment();
+        payment.remove(PaymentKey.merchantId);
+
+        HashMap<String, Object> defaults = new HashMap<>();
+        defaults.put(PaymentKey.merchantId, "999");
+        defaults.put(PaymentKey.city, "Kandy");
+        PaymentRequest request = PaymentJsonReader.parse(json(payment), defaults, null);
+
+        assertEquals("999", request.getMerchantId());
+        assertEquals("Colombo", request.getCity());
+    }
+
+    @Test
+    public void rejectsMalformedJson() throws Exception {
+        String payment = json(onetimePayment());
+        for (String json : new String[]{ null, "", "[]", "{\"merchant_id\": ", "{\"amount\": NaN}", payment + " {}", payment + "]" }){
+            try {
+                PaymentJsonReader.parse(json, null, null);
+                fail("Expected " + json + " to be rejected");
+            }
+            catch(IOException expected){
+            }
+        }
+    }
+
+    private static String json(Map<String, Object> payment) {
+        return new GsonBuilder().serializeNulls().create().toJson(payment);
+    }
+
+    private static Map<String, Object> item(String id, String name, Object quantity, Object amount) {
+        LinkedHashMap<String, Object> item = new LinkedHashMap<>();
+        if (id != null){
+            item.put("id", id);
+        }
+        if (name != null){
+            item.put("name", name);
+        }
+        item.put("quantity", quantity);
+        item.put("amount", amount);
+        return item;
+    }
+
+    private static LinkedHashMap<String, Object> onetimePayment() {
+        LinkedHashMap<String, Object> payment = new LinkedHashMap<>();
+        payment.put(PaymentKey.sandbox, true);
+        payment.put(PaymentKey.merchantId, "1211149");
+        payment.put(PaymentKey.notifyUrl, "http://sample.com/notify");
+        payment.put(PaymentKey.orderId, "Order-1");
+        payment.put(PaymentKey.items, "Hello from React Native!");
+        payment.put(PaymentKey.amount, "1000.00");
+        payment.put(PaymentKey.currency, "LKR");
+        payment.put(PaymentKey.firstName, "Saman");
+        payment.put(PaymentKey.lastName, "Perera");
+        payment.put(PaymentKey.email, "samanp@gmail.com");
+        payment.put(PaymentKey.phone, "0771234567");
+        payment.put(PaymentKey.address, "No.1, Galle Road");
+        payment.put(PaymentKey.city, "Colombo");
+        payment.put(PaymentKey.country, "Sri Lanka");
+        return payment;
+    }
+}
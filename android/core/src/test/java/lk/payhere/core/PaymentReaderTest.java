@@ -0,0 +1,236 @@
+package lk.payhere.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PaymentReaderTest {
+
+    @Test
+    public void readsOnetimePayment() throws Exception {
+        PaymentRequest request = PaymentReader.parse(onetimePayment(), null);
+
+        assertEquals(PaymentRequest.MODE_ONETIME, request.getMode());
+        assertTrue(request.isSandbox());
+        assertEquals("1211149", request.getMerchantId());
+        assertEquals("Order-1", request.getOrderId());
+        assertEquals(1000 * PayHereMoney.MICROS, request.getAmount());
+        assertEquals("Colombo", request.getCity());
+        assertFalse(request.hasStartupFee());
+    }
+
+    @Test
+    public void picksModeFromFlags() {
+        HashMap<String, Object> payment = onetimePayment();
+        payment.put(PaymentKey.recurrence, "1 Month");
+        payment.put(PaymentKey.duration, "1 Year");
+        assertEquals(PaymentRequest.MODE_RECURRING, PaymentReader.mode(payment));
+
+        payment.put(PaymentKey.authorize, true);
+        assertEquals(PaymentRequest.MODE_AUTHORIZATION, PaymentReader.mode(payment));
+
+        payment.put(PaymentKey.preapprove, true);
+        assertEquals(PaymentRequest.MODE_PREAPPROVAL, PaymentReader.mode(payment));
+    }
+
+    @Test
+    public void formatsIntegralNumbersWithoutFraction() throws Exception {
+        PaymentReader reader = new PaymentReader(PaymentRequest.MODE_ONETIME, new ArrayList<String>());
+        reader.number(PaymentKey.orderId, 42);
+
+        assertEquals("42", reader.finish(null).getOrderId());
+    }
+
+    @Test
+    public void collectsEveryError() throws Exception {
+        HashMap<String, Object> payment = onetimePayment();
+        payment.remove(PaymentKey.merchantId);
+        payment.put(PaymentKey.email, null);
+        payment.put(PaymentKey.amount, "abc");
+
+        List<String> errors = new ArrayList<>();
+        PaymentReader.parse(payment, errors);
+
+        assertEquals(3, errors.size());
+    }
+
+    @Test
+    public void throwsFirstErrorWhenNotCollecting() throws Exception {
+        HashMap<String, Object> payment = onetimePayment();
+        payment.remove(PaymentKey.merchantId);
+
+        try {
+            PaymentReader.parse(payment, null);
+            fail("Expected missing merchant_id to throw");
+        }
+        catch(PayHereKeyExtractionException exc){
+            assertTrue(exc.toString().contains(PaymentKey.merchantId));
+        }
+    }
+
+    @Test
+    public void ordersItemKeysByIndex() throws Exception {
+        HashMap<String, Object> payment = onetimePayment();
+        payment.put("item_name_2", "Second");
+        payment.put("quantity_2", 1.0);
+        payment.put("amount_2", "400");
+        payment.put("item_name_1", "First");
+        payment.put("quantity_1", "2");
+        payment.put("amount_1", 300.0);
+
+        List<PaymentItem> items = PaymentReader.parse(payment, null).getItems();
+
+        assertEquals(2, items.size());
+        assertEquals("First", items.get(0).getName());
+        assertEquals(2, items.get(0).getQuantity());
+        assertEquals("Second", items.get(1).getName());
+    }
+
+    @Test
+    public void ordersLargeAndSparseCartsByIndex() throws Exception {
+        HashMap<String, Object> payment = onetimePayment();
+        payment.put("item_name_999999", "Stray");
+        payment.put("quantity_999999", 1.0);
+        payment.put("amount_999999", "1");
+        payment.put("item_name_1500", "Late");
+        payment.put("quantity_1500", 1.0);
+        payment.put("amount_1500", "1");
+        for (int i = 1; i <= 1000; i++){
+            payment.put("item_name_" + i, "Item " + i);
+            payment.put("quantity_" + i, 1.0);
+            payment.put("amount_" + i, "1");
+        }
+
+        List<PaymentItem> items = PaymentReader.parse(payment, null).getItems();
+
+        assertEquals(1002, items.size());
+        for (int i = 0; i < 1000; i++){
+            assertEquals("Item " + (i + 1), items.get(i).getName());
+        }
+        assertEquals("Late", items.get(1000).getName());
+        assertEquals("Stray", items.get(1001).getName());
+    }
+
+    @Test
+    public void acceptsItemsNotAddingUpToAmount() throws Exception {
+        // e.g. the amount includes shipping
+        HashMap<String, Object> payment = onetimePayment();
+        List<PaymentItem> items = Arrays.asList(new PaymentItem(null, "Item", 1, 999 * PayHereMoney.MICROS));
+
+        PaymentReader reader = new PaymentReader(PaymentReader.mode(payment), null);
+        reader.read(payment);
+        PaymentRequest request = reader.finish(items);
+
+        assertTrue(request.hasItemTotal());
+        assertEquals(999 * PayHereMoney.MICROS, request.getItemTotal());
+        assertEquals(1000 * PayHereMoney.MICROS, request.getAmount());
+    }
+
+    @Test
+    public void rejectsItemTotalThatOverflows() throws Exception {
+        HashMap<String, Object> payment = onetimePayment();
+        List<PaymentItem> items = Arrays.asList(
+                new PaymentItem(null, "Big", Integer.MAX_VALUE, 1000000000000L * PayHereMoney.MICROS),
+                new PaymentItem(null, "Small", 1, PayHereMoney.MICROS));
+
+        PaymentReader reader = new PaymentReader(PaymentReader.mode(payment), null);
+        reader.read(payment);
+        try {
+            reader.finish(items);
+            fail("Expected item total overflow to throw");
+        }
+        catch(PayHereItemProcessingException exc){
+            assertTrue(exc.getReason().contains("too large"));
+        }
+    }
+
+    @Test
+    public void rejectsAmountBeyondCurrencyScale() throws Exception {
+        HashMap<String, Object> payment = onetimePayment();
+        payment.put(PaymentKey.amount, "10.001");
+
+        List<String> errors = new ArrayList<>();
+        PaymentReader.parse(payment, errors);
+
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void rejectsItemAndNumberAmountsBeyondCurrencyScale() throws Exception {
+        HashMap<String, Object> payment = onetimePayment();
+        payment.put(PaymentKey.amount, 10.005);
+        payment.put("item_name_1", "First");
+        payment.put("quantity_1", 1.0);
+        payment.put("amount_1", "10.005");
+
+        List<String> errors = new ArrayList<>();
+        PaymentReader.parse(payment, errors);
+
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(1).contains("more than 2 decimal places"));
+
+        payment.put(PaymentKey.currency, "KWD");
+        errors.clear();
+        PaymentReader.parse(payment, errors);
+        assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void defaultsOnlyFillMissingFields() throws Exception {
+        HashMap<String, Object> payment = onetimePayment();
+        payment.remove(PaymentKey.merchantId);
+        payment.put(PaymentKey.currency, null);
+
+        PaymentReader reader = new PaymentReader(PaymentReader.mode(payment), null);
+        reader.read(payment);
+        reader.readDefault(PaymentKey.merchantId, "999");
+        reader.readDefault(PaymentKey.currency, "USD");
+        reader.readDefault(PaymentKey.city, "Kandy");
+        PaymentRequest request = reader.finish(null);
+
+        assertEquals("999", request.getMerchantId());
+        assertEquals("USD", request.getCurrency());
+        assertEquals("Colombo", request.getCity());
+    }
+
+    @Test
+    public void mapsResponseErrors() {
+        PayHereError error = PayHereError.fromResponse(PayHereError.RESPONSE_OTHER, 1, null, -2, "Insufficient funds");
+        assertEquals(PayHereError.CODE_PAYMENT_DECLINED, error.code);
+        assertEquals("Insufficient funds", error.message);
+
+        error = PayHereError.fromResponse(PayHereError.RESPONSE_OTHER, 1, null, PayHereError.NO_STATUS, null);
+        assertEquals(PayHereError.CODE_UNKNOWN, error.code);
+
+        error = PayHereError.fromResponse(PayHereError.RESPONSE_NETWORK, -2, "ignored", PayHereError.NO_STATUS, null);
+        assertEquals(PayHereError.CODE_NETWORK, error.code);
+        assertEquals("Network Error", error.message);
+    }
+
+    private static HashMap<String, Object> onetimePayment() {
+        HashMap<String, Object> payment = new HashMap<>();
+        payment.put(PaymentKey.sandbox, true);
+        payment.put(PaymentKey.merchantId, "1211149");
+        payment.put(PaymentKey.notifyUrl, "http://sample.com/notify");
+        payment.put(PaymentKey.orderId, "Order-1");
+        payment.put(PaymentKey.items, "Hello from React Native!");
+        payment.put(PaymentKey.amount, "1000.00");
+        payment.put(PaymentKey.currency, "LKR");
+        payment.put(PaymentKey.firstName, "Saman");
+        payment.put(PaymentKey.lastName, "Perera");
+        payment.put(PaymentKey.email, "samanp@gmail.com");
+        payment.put(PaymentKey.phone, "0771234567");
+        payment.put(PaymentKey.address, "No.1, Galle Road");
+        payment.put(PaymentKey.city, "Colombo");
+        payment.put(PaymentKey.country, "Sri Lanka");
+        return payment;
+    }
+}
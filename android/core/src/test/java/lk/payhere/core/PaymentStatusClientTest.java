@@ -0,0 +1,308 @@
+package lk.payhere.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the client against a local HTTP server standing in for the Retrieval API.
+ */
+public class PaymentStatusClientTest {
+
+    static final String FOUND = "{\"status\":1,\"msg\":\"Payments with order_id:Order-1\",\"data\":[{"
+            + "\"payment_id\":320025071278,\"order_id\":\"Order-1\",\"date\":\"2020-01-16 12:22:14\","
+            + "\"description\":\"Item title\",\"status\":\"RECEIVED\",\"currency\":\"LKR\",\"amount\":50,"
+            + "\"payment_method\":{\"method\":\"VISA\",\"card_customer_name\":\"Saman Perera\",\"card_no\":\"************1292\"}}]}";
+
+    static final String NOT_FOUND = "{\"status\":-1,\"msg\":\"No payments found\",\"data\":null}";
+
+    @Test
+    public void readsStatusWithBearerToken() throws Exception {
+        StandIn api = new StandIn(200, FOUND);
+        try {
+            Result result = query(new PaymentStatusClient(PaymentStatusClient.HTTP, api.executor, 3, 1, 0), api, "Order-1");
+
+            assertNull(result.error);
+            PaymentStatus status = result.status;
+            assertTrue(status.isFound());
+            assertEquals(320025071278L, status.getPaymentNo());
+            assertEquals("RECEIVED", status.getStatus());
+            assertEquals(50.0, status.getAmount(), 0);
+            assertEquals("VISA", status.getMethod());
+            assertEquals("************1292", status.getCardNo());
+            assertEquals("Bearer token", api.authorization);
+            assertEquals("/merchant/v1/payment/search?order_id=Order-1", api.uri);
+        }
+        finally {
+            api.stop();
+        }
+    }
+
+    @Test
+    public void reportsMissingOrder() throws Exception {
+        StandIn api = new StandIn(200, NOT_FOUND);
+        try {
+            Result result = query(new PaymentStatusClient(PaymentStatusClient.HTTP, api.executor, 3, 1, 0), api, "Order-2");
+
+            assertFalse(result.status.isFound());
+            assertEquals("No payments found", result.status.getMessage());
+        }
+        finally {
+            api.stop();
+        }
+    }
+
+    @Test
+    public void coalescesConcurrentQueries() throws Exception {
+        StandIn api = new StandIn(200, FOUND);
+        api.gate = new CountDownLatch(1);
+        try {
+            PaymentStatusClient client = new PaymentStatusClient(PaymentStatusClient.HTTP, api.executor, 3, 1, 0);
+            ArrayList<Result> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++){
+                Result result = new Result();
+                client.getStatus(api.baseUrl, "Order-1", "token", result);
+                results.add(result);
+            }
+            api.gate.countDown();
+
+            for (Result result : results){
+                result.await();
+                assertTrue(result.status.isFound());
+            }
+            assertEquals(1, api.requests.get());
+        }
+        finally {
+            api.stop();
+        }
+    }
+
+    @Test
+    public void retriesServerErrorsWithBackoff() throws Exception {
+        StandIn api = new StandIn(200, FOUND);
+        api.failures = 2;
+        try {
+            Result result = query(new PaymentStatusClient(PaymentStatusClient.HTTP, api.executor, 3, 1, 0), api, "Order-1");
+
+            assertTrue(result.status.isFound());
+            assertEquals(3, api.requests.get());
+        }
+        finally {
+            api.stop();
+        }
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        StandIn api = new StandIn(200, FOUND);
+        api.failures = 5;
+        try {
+            Result result = query(new PaymentStatusClient(PaymentStatusClient.HTTP, api.executor, 2, 1, 0), api, "Order-1");
+
+            assertEquals(503, ((PaymentStatusException) result.error).getHttpStatus());
+            assertEquals(2, api.requests.get());
+        }
+        finally {
+            api.stop();
+        }
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() throws Exception {
+        StandIn api = new StandIn(401, "{\"error\":\"invalid_token\"}");
+        try {
+            Result result = query(new PaymentStatusClient(PaymentStatusClient.HTTP, api.executor, 3, 1, 0), api, "Order-1");
+
+            assertEquals(401, ((PaymentStatusException) result.error).getHttpStatus());
+            assertEquals(1, api.requests.get());
+        }
+        finally {
+            api.stop();
+        }
+    }
+
+    @Test
+    public void reusesRecentResults() throws Exception {
+        StandIn api = new StandIn(200, FOUND);
+        try {
+            PaymentStatusClient client = new PaymentStatusClient(PaymentStatusClient.HTTP, api.executor, 3, 1, 60000);
+            query(client, api, "Order-1");
+            Result cached = query(client, api, "Order-1");
+            query(client, api, "Order-2");
+
+            assertTrue(cached.status.isFound());
+            assertEquals(2, api.requests.get());
+        }
+        finally {
+            api.stop();
+        }
+    }
+
+    @Test
+    public void doesNotShareResultsAcrossTokens() throws Exception {
+        StandIn api = new StandIn(200, FOUND);
+        try {
+            PaymentStatusClient client = new PaymentStatusClient(PaymentStatusClient.HTTP, api.executor, 3, 1, 60000);
+            query(client, api, "Order-1");
+
+            Result other = new Result();
+            client.getStatus(api.baseUrl, "Order-1", "other-token", other);
+            other.await();
+
+            assertTrue(other.status.isFound());
+            assertEquals(2, api.requests.get());
+            assertEquals("Bearer other-token", api.authorization);
+        }
+        finally {
+            api.stop();
+        }
+    }
+
+    @Test
+    public void failsQueriesTheExecutorRejects() throws Exception {
+        StandIn api = new StandIn(200, FOUND);
+        try {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            executor.shutdown();
+            PaymentStatusClient client = new PaymentStatusClient(PaymentStatusClient.HTTP, executor, 3, 1, 0);
+
+            Result rejected = new Result();
+            client.getStatus(api.baseUrl, "Order-1", "token", rejected);
+            rejected.await();
+            assertTrue(rejected.error instanceof RejectedExecutionException);
+
+            Result retried = new Result();
+            client.getStatus(api.baseUrl, "Order-1", "token", retried);
+            retried.await();
+            assertTrue("Rejected query was left in flight", retried.error instanceof RejectedExecutionException);
+            assertEquals(0, api.requests.get());
+        }
+        finally {
+            api.stop();
+        }
+    }
+
+    @Test
+    public void closeFailsQueriesWaitingForRetry() throws Exception {
+        StandIn api = new StandIn(200, FOUND);
+        api.failures = 10;
+        try {
+            PaymentStatusClient client = new PaymentStatusClient(PaymentStatusClient.HTTP, api.executor, 3, 60000, 0);
+            Result result = new Result();
+            client.getStatus(api.baseUrl, "Order-1", "token", result);
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (api.requests.get() < 1 && System.currentTimeMillis() < deadline){
+                Thread.sleep(5);
+            }
+            client.close();
+
+            result.await();
+            assertTrue(result.error instanceof RejectedExecutionException);
+            assertEquals(1, api.requests.get());
+        }
+        finally {
+            api.stop();
+        }
+    }
+
+    private static Result query(PaymentStatusClient client, StandIn api, String orderId) throws InterruptedException {
+        Result result = new Result();
+        client.getStatus(api.baseUrl, orderId, "token", result);
+        result.await();
+        return result;
+    }
+
+    private static final class Result implements PaymentStatusClient.Listener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile PaymentStatus status;
+        volatile Exception error;
+
+        @Override
+        public void onStatus(PaymentStatus status) {
+            this.status = status;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Exception error) {
+            this.error = error;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("No result", done.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Answers every request with a fixed response, after failing the first 'failures' with a 503.
+     */
+    private static final class StandIn implements HttpHandler {
+        final HttpServer server;
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final String baseUrl;
+        final int code;
+        final String body;
+        final AtomicInteger requests = new AtomicInteger();
+        volatile int failures;
+        volatile CountDownLatch gate;
+        volatile String authorization;
+        volatile String uri;
+
+        StandIn(int code, String body) throws IOException {
+            this.code = code;
+            this.body = body;
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            this.server.createContext("/", this);
+            this.server.setExecutor(Executors.newCachedThreadPool());
+            this.server.start();
+            this.baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int request = requests.incrementAndGet();
+            authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            uri = exchange.getRequestURI().toString();
+
+            try {
+                if (gate != null)
+                    gate.await(10, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+
+            boolean fail = request <= failures;
+            byte[] bytes = (fail ? "{}" : body).getBytes("UTF-8");
+            exchange.sendResponseHeaders(fail ? 503 : code, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+
+        void stop() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
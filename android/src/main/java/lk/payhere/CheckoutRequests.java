@@ -0,0 +1,42 @@
+package lk.payhere;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands payment requests to {@link PayHereCheckoutActivity} within the process.
+ *
+ * Only the handle (the session's request code) crosses the Intent, so launching
+ * a checkout costs the same for a cart of one item or of hundreds, and the request
+ * is never Java-serialized into a Binder transaction.
+ *
+ * Requests are kept until the module receives the session's result, so a checkout
+ * activity recreated after a configuration change finds its request again.
+ */
+final class CheckoutRequests {
+
+    static final String EXTRA_HANDLE = "lk.payhere.extra.REQUEST_HANDLE";
+
+    private static final ConcurrentHashMap<Integer, Serializable> requests = new ConcurrentHashMap<>();
+
+    private CheckoutRequests() {}
+
+    static void put(int handle, Serializable request) {
+        requests.put(handle, request);
+    }
+
+    /**
+     * @return The request, or null if it was released or the process was restarted since the launch
+     */
+    static Serializable get(int handle) {
+        return requests.get(handle);
+    }
+
+    static void release(int handle) {
+        requests.remove(handle);
+    }
+
+    static int size() {
+        return requests.size();
+    }
+}
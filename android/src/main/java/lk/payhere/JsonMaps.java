@@ -0,0 +1,132 @@
+package lk.payhere;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Map;
+
+/**
+ * Converts between React Native maps and Gson trees, for results kept in the PaymentJournal.
+ * Numbers come back as doubles, as JS sees them anyway.
+ */
+final class JsonMaps {
+
+    private JsonMaps() {}
+
+    static JsonObject toJson(ReadableMap map) {
+        JsonObject object = new JsonObject();
+        ReadableMapKeySetIterator iterator = map.keySetIterator();
+        while (iterator.hasNextKey()){
+            String key = iterator.nextKey();
+            switch (map.getType(key)){
+                case Boolean:
+                    object.addProperty(key, map.getBoolean(key));
+                    break;
+                case Number:
+                    object.addProperty(key, map.getDouble(key));
+                    break;
+                case String:
+                    object.addProperty(key, map.getString(key));
+                    break;
+                case Map:
+                    object.add(key, toJson(map.getMap(key)));
+                    break;
+                case Array:
+                    object.add(key, toJson(map.getArray(key)));
+                    break;
+                default:
+                    object.add(key, JsonNull.INSTANCE);
+                    break;
+            }
+        }
+        return object;
+    }
+
+    static JsonArray toJson(ReadableArray array) {
+        JsonArray json = new JsonArray();
+        for (int i = 0; i < array.size(); i++){
+            switch (array.getType(i)){
+                case Boolean:
+                    json.add(new JsonPrimitive(array.getBoolean(i)));
+                    break;
+                case Number:
+                    json.add(new JsonPrimitive(array.getDouble(i)));
+                    break;
+                case String:
+                    json.add(new JsonPrimitive(array.getString(i)));
+                    break;
+                case Map:
+                    json.add(toJson(array.getMap(i)));
+                    break;
+                case Array:
+                    json.add(toJson(array.getArray(i)));
+                    break;
+                default:
+                    json.add(JsonNull.INSTANCE);
+                    break;
+            }
+        }
+        return json;
+    }
+
+    static WritableMap toWritableMap(JsonObject object) {
+        WritableMap map = Arguments.createMap();
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()){
+            String key = entry.getKey();
+            JsonElement value = entry.getValue();
+            if (value.isJsonObject()){
+                map.putMap(key, toWritableMap(value.getAsJsonObject()));
+            }
+            else if (value.isJsonArray()){
+                map.putArray(key, toWritableArray(value.getAsJsonArray()));
+            }
+            else if (value.isJsonNull()){
+                map.putNull(key);
+            }
+            else{
+                JsonPrimitive primitive = value.getAsJsonPrimitive();
+                if (primitive.isBoolean())
+                    map.putBoolean(key, primitive.getAsBoolean());
+                else if (primitive.isNumber())
+                    map.putDouble(key, primitive.getAsDouble());
+                else
+                    map.putString(key, primitive.getAsString());
+            }
+        }
+        return map;
+    }
+
+    static WritableArray toWritableArray(JsonArray array) {
+        WritableArray writable = Arguments.createArray();
+        for (JsonElement value : array){
+            if (value.isJsonObject()){
+                writable.pushMap(toWritableMap(value.getAsJsonObject()));
+            }
+            else if (value.isJsonArray()){
+                writable.pushArray(toWritableArray(value.getAsJsonArray()));
+            }
+            else if (value.isJsonNull()){
+                writable.pushNull();
+            }
+            else{
+                JsonPrimitive primitive = value.getAsJsonPrimitive();
+                if (primitive.isBoolean())
+                    writable.pushBoolean(primitive.getAsBoolean());
+                else if (primitive.isNumber())
+                    writable.pushDouble(primitive.getAsDouble());
+                else
+                    writable.pushString(primitive.getAsString());
+            }
+        }
+        return writable;
+    }
+}
@@ -0,0 +1,77 @@
+package lk.payhere;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+import java.io.Serializable;
+
+import lk.payhere.androidsdk.PHConfigs;
+import lk.payhere.androidsdk.PHConstants;
+import lk.payhere.androidsdk.PHMainActivity;
+
+/**
+ * PHMainActivity launched with a request handle instead of the serialized request.
+ *
+ * The request is looked up in {@link CheckoutRequests} and attached to this activity's
+ * own Intent object before PHMainActivity reads it. That Intent never leaves the
+ * process again, so the request is passed by reference.
+ *
+ * If the process was restarted while the checkout was showing, the request is gone
+ * and PHMainActivity reports its usual 'Intent Data not Present' error.
+ *
+ * The SDK reads its base URL from the process-wide PHConfigs, and has no way to pass
+ * it per checkout. As a workaround, each checkout carries the base URL of its own
+ * session and sets the global again whenever it is created or comes back to the
+ * foreground, so checkouts for sandbox and live merchants can be open at the same
+ * time. This is not per-session state: it relies on only the foreground checkout
+ * talking to PayHere, and anything else reading PHConfigs sees the last one applied.
+ */
+public class PayHereCheckoutActivity extends PHMainActivity {
+
+    static final String EXTRA_BASE_URL = "lk.payhere.extra.BASE_URL";
+
+    /**
+     * @param handle Handle of a request stored in CheckoutRequests
+     * @param baseUrl PHConfigs.SANDBOX_URL or PHConfigs.LIVE_URL
+     */
+    static Intent createIntent(Context context, int handle, String baseUrl) {
+        Intent intent = new Intent(context, PayHereCheckoutActivity.class);
+        intent.putExtra(CheckoutRequests.EXTRA_HANDLE, handle);
+        intent.putExtra(EXTRA_BASE_URL, baseUrl);
+        return intent;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        this.applyEnvironment();
+
+        Intent intent = getIntent();
+        if (intent != null && !intent.hasExtra(PHConstants.INTENT_EXTRA_DATA)){
+            Serializable request = CheckoutRequests.get(intent.getIntExtra(CheckoutRequests.EXTRA_HANDLE, -1));
+            if (request != null){
+                intent.putExtra(PHConstants.INTENT_EXTRA_DATA, request);
+            }
+        }
+        super.onCreate(savedInstanceState);
+    }
+
+    @Override
+    protected void onResume() {
+        // Another checkout may have applied its environment while this one was in the background
+        this.applyEnvironment();
+        super.onResume();
+    }
+
+    /**
+     * Points the process-wide PHConfigs at this checkout's environment.
+     * A workaround for the SDK, which does not take the base URL per request.
+     */
+    private void applyEnvironment() {
+        Intent intent = getIntent();
+        String baseUrl = intent != null ? intent.getStringExtra(EXTRA_BASE_URL) : null;
+        if (baseUrl != null){
+            PHConfigs.setBaseUrl(baseUrl);
+        }
+    }
+}
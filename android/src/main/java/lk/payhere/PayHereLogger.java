@@ -0,0 +1,96 @@
+package lk.payhere;
+
+import android.util.Log;
+
+/**
+ * Level-gated logger used by {@link PayhereOfficialModule}.
+ *
+ * Messages below the configured level are dropped before any string is built,
+ * so callers should check {@link #isLoggable(int)} before formatting anything
+ * expensive. Payment payloads are redacted by default.
+ *
+ * Pass an instance to {@link PayhereOfficialPackage#PayhereOfficialPackage(PayHereLogger)}
+ * to change the level or send logs somewhere other than logcat.
+ */
+public final class PayHereLogger {
+
+    /** Levels share their values with android.util.Log priorities. */
+    public static final int VERBOSE = Log.VERBOSE;
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+    /** Disables logging entirely */
+    public static final int NONE = Integer.MAX_VALUE;
+
+    public static final String TAG = "PayHere";
+
+    /**
+     * Destination of log messages that passed the level check.
+     */
+    public interface Sink {
+        void log(int level, String tag, String message);
+    }
+
+    public static final Sink LOGCAT = new Sink() {
+        @Override
+        public void log(int level, String tag, String message) {
+            Log.println(level, tag, message);
+        }
+    };
+
+    /** Warnings and errors to logcat, payment payloads are not logged. */
+    public static final PayHereLogger DEFAULT = new PayHereLogger(WARN, LOGCAT);
+
+    private final int level;
+    private final Sink sink;
+    private final boolean redactPii;
+
+    /**
+     * @param level Minimum level to log (e.g. {@link #DEBUG}), or {@link #NONE}
+     * @param sink Destination of log messages
+     */
+    public PayHereLogger(int level, Sink sink) {
+        this(level, sink, true);
+    }
+
+    /**
+     * @param level Minimum level to log (e.g. {@link #DEBUG}), or {@link #NONE}
+     * @param sink Destination of log messages
+     * @param redactPii Whether customer details are masked when payloads are logged
+     */
+    public PayHereLogger(int level, Sink sink, boolean redactPii) {
+        if (sink == null){
+            throw new IllegalArgumentException("sink must not be null");
+        }
+        this.level = level;
+        this.sink = sink;
+        this.redactPii = redactPii;
+    }
+
+    public boolean isLoggable(int level) {
+        return level >= this.level;
+    }
+
+    public boolean redactsPii() {
+        return redactPii;
+    }
+
+    public void log(int level, String message) {
+        if (level >= this.level){
+            sink.log(level, TAG, message);
+        }
+    }
+
+    public void debug(String message) {
+        log(DEBUG, message);
+    }
+
+    public void warn(String message) {
+        log(WARN, message);
+    }
+
+    public void error(String message) {
+        log(ERROR, message);
+    }
+}
@@ -0,0 +1,178 @@
+package lk.payhere;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lk.payhere.core.LatencyHistogram;
+
+/**
+ * In-process payment metrics kept by {@link PayhereOfficialModule}.
+ *
+ * Counters and histograms are lock-free and only ever grow. JS reads them with
+ * PayHere.getMetrics(). Native code can receive every measurement as it is
+ * recorded by passing a {@link Sink} to {@link PayhereOfficialPackage#setMetricsSink(Sink)}.
+ *
+ * Outcomes are counted per result sent to JS, so payments rejected before launch
+ * count as errors without a status.
+ */
+public final class PayHereMetrics {
+
+    /** Latency metric names */
+    public static final String PARSE = "parse";
+    public static final String LAUNCH = "launch";
+    public static final String TIME_TO_RESULT = "timeToResult";
+
+    /** Outcome names */
+    public static final String COMPLETED = "completed";
+    public static final String DISMISSED = "dismissed";
+    public static final String ERROR = "error";
+
+    /**
+     * Receives measurements as they are recorded, on the thread that recorded them.
+     * Implementations must be quick and must not throw.
+     */
+    public interface Sink {
+        /**
+         * @param metric PARSE, LAUNCH or TIME_TO_RESULT
+         */
+        void onLatency(String metric, long durationNanos);
+
+        /**
+         * @param outcome COMPLETED, DISMISSED or ERROR
+         * @param status PHResponse status, or PayHereError.NO_STATUS if there was no PayHere response
+         */
+        void onOutcome(String outcome, int status);
+    }
+
+    /**
+     * Count of an outcome, in total and by PHResponse status.
+     */
+    public static final class OutcomeCounter {
+        private final AtomicLong total = new AtomicLong();
+        /** Keys are only ever added */
+        private final ConcurrentHashMap<Integer, AtomicLong> byStatus = new ConcurrentHashMap<>();
+
+        void increment(int status) {
+            total.incrementAndGet();
+
+            AtomicLong counter = byStatus.get(status);
+            if (counter == null){
+                AtomicLong created = new AtomicLong();
+                counter = byStatus.putIfAbsent(status, created);
+                if (counter == null){
+                    counter = created;
+                }
+            }
+            counter.incrementAndGet();
+        }
+
+        public long getCount() {
+            return total.get();
+        }
+
+        /**
+         * @param status PHResponse status, or PayHereError.NO_STATUS for outcomes without a PayHere response
+         */
+        public long getCount(int status) {
+            AtomicLong counter = byStatus.get(status);
+            return counter == null ? 0 : counter.get();
+        }
+
+        /**
+         * @return Live view of the counts by status
+         */
+        Map<Integer, AtomicLong> byStatus() {
+            return byStatus;
+        }
+    }
+
+    private volatile Sink sink = null;
+
+    private final LatencyHistogram parse = new LatencyHistogram();
+    private final LatencyHistogram launch = new LatencyHistogram();
+    private final LatencyHistogram timeToResult = new LatencyHistogram();
+
+    private final OutcomeCounter completed = new OutcomeCounter();
+    private final OutcomeCounter dismissed = new OutcomeCounter();
+    private final OutcomeCounter errors = new OutcomeCounter();
+
+    PayHereMetrics() {}
+
+    void setSink(Sink sink) {
+        this.sink = sink;
+    }
+
+    void recordParse(long durationNanos) {
+        record(parse, PARSE, durationNanos);
+    }
+
+    void recordLaunch(long durationNanos) {
+        record(launch, LAUNCH, durationNanos);
+    }
+
+    /**
+     * @param durationNanos From startPayment to the result being sent to JS
+     */
+    void recordTimeToResult(long durationNanos) {
+        record(timeToResult, TIME_TO_RESULT, durationNanos);
+    }
+
+    private void record(LatencyHistogram histogram, String metric, long durationNanos) {
+        histogram.record(durationNanos);
+        Sink sink = this.sink;
+        if (sink != null){
+            sink.onLatency(metric, durationNanos);
+        }
+    }
+
+    /**
+     * @param status PHResponse status, or PayHereError.NO_STATUS
+     */
+    void recordCompleted(int status) {
+        record(completed, COMPLETED, status);
+    }
+
+    void recordDismissed(int status) {
+        record(dismissed, DISMISSED, status);
+    }
+
+    void recordError(int status) {
+        record(errors, ERROR, status);
+    }
+
+    private void record(OutcomeCounter counter, String outcome, int status) {
+        counter.increment(status);
+        Sink sink = this.sink;
+        if (sink != null){
+            sink.onOutcome(outcome, status);
+        }
+    }
+
+    public LatencyHistogram getParseLatency() {
+        return parse;
+    }
+
+    public LatencyHistogram getLaunchLatency() {
+        return launch;
+    }
+
+    /**
+     * @return Time from startPayment to the result being sent to JS
+     */
+    public LatencyHistogram getTimeToResult() {
+        return timeToResult;
+    }
+
+    public OutcomeCounter getCompleted() {
+        return completed;
+    }
+
+    public OutcomeCounter getDismissed() {
+        return dismissed;
+    }
+
+    public OutcomeCounter getErrors() {
+        return errors;
+    }
+}
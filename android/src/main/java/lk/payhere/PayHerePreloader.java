@@ -0,0 +1,112 @@
+package lk.payhere;
+
+import java.util.concurrent.Executor;
+
+import lk.payhere.androidsdk.PHConfigs;
+import lk.payhere.androidsdk.PHConstants;
+import lk.payhere.androidsdk.PHMainActivity;
+import lk.payhere.androidsdk.PHResponse;
+import lk.payhere.androidsdk.model.Address;
+import lk.payhere.androidsdk.model.Customer;
+import lk.payhere.androidsdk.model.InitPreapprovalRequest;
+import lk.payhere.androidsdk.model.InitRequest;
+import lk.payhere.androidsdk.model.Item;
+import lk.payhere.androidsdk.model.StatusResponse;
+
+/**
+ * Loads and initializes the PayHere SDK classes used by a checkout ahead of time,
+ * so the first tap on Pay doesn't pay for it inside launchRequest.
+ *
+ * The warm-up itself runs once per process. Later calls only report that it was done.
+ */
+final class PayHerePreloader {
+
+    /**
+     * Outcome of a preload call.
+     */
+    static final class Result {
+        /** Time spent warming up, 0 if it had already been done */
+        final double durationMs;
+        final boolean alreadyLoaded;
+
+        Result(double durationMs, boolean alreadyLoaded) {
+            this.durationMs = durationMs;
+            this.alreadyLoaded = alreadyLoaded;
+        }
+    }
+
+    interface Listener {
+        void onPreloaded(Result result);
+        void onPreloadFailed(Throwable error);
+    }
+
+    private static final Class<?>[] CLASSES = {
+            PHMainActivity.class,
+            PayHereCheckoutActivity.class,
+            PHConfigs.class,
+            PHConstants.class,
+            PHResponse.class,
+            InitRequest.class,
+            InitPreapprovalRequest.class,
+            Item.class,
+            Customer.class,
+            Address.class,
+            StatusResponse.class
+    };
+
+    private static final Object lock = new Object();
+    private static boolean loaded = false;
+
+    private PayHerePreloader() {}
+
+    /**
+     * Runs the warm-up on the given executor, instead of a thread of its own per call.
+     * @param executor Background executor of the module
+     * @param listener Notified on the executor's thread (accepts null)
+     */
+    static void preloadAsync(Executor executor, final Listener listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Result result;
+                try {
+                    result = preload();
+                }
+                catch(Throwable e){
+                    if (listener != null){
+                        listener.onPreloadFailed(e);
+                    }
+                    return;
+                }
+                if (listener != null){
+                    listener.onPreloaded(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Initializes the SDK classes on the calling thread.
+     */
+    static Result preload() throws ClassNotFoundException {
+        synchronized (lock){
+            if (loaded){
+                return new Result(0, true);
+            }
+
+            long start = System.nanoTime();
+
+            for (Class<?> cls : CLASSES){
+                Class.forName(cls.getName(), true, cls.getClassLoader());
+            }
+
+            // Runs the constructors and field initializers of the request models
+            new InitRequest().getCustomer();
+            new InitPreapprovalRequest().getCustomer();
+            new Item();
+
+            loaded = true;
+            return new Result((System.nanoTime() - start) / 1e6, false);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package lk.payhere;
+
+import lk.payhere.androidsdk.model.Address;
+import lk.payhere.androidsdk.model.Customer;
+import lk.payhere.androidsdk.model.InitBaseRequest;
+import lk.payhere.androidsdk.model.InitPreapprovalRequest;
+import lk.payhere.androidsdk.model.InitRequest;
+import lk.payhere.androidsdk.model.Item;
+import lk.payhere.core.PayHereMoney;
+import lk.payhere.core.PaymentItem;
+import lk.payhere.core.PaymentRequest;
+
+/**
+ * Turns a PaymentRequest read by the core module into the PayHere SDK request models.
+ */
+final class PayHereRequests {
+
+    private PayHereRequests() {}
+
+    /**
+     * For one-time, recurring and authorization payments.
+     */
+    static InitRequest toInitRequest(PaymentRequest payment) {
+        InitRequest req = new InitRequest();
+        applyBase(req, payment);
+
+        if (payment.getMode() == PaymentRequest.MODE_RECURRING){
+            req.setRecurrence(payment.getRecurrence());
+            req.setDuration(payment.getDuration());
+            if (payment.hasStartupFee()){
+                req.setStartupFee(PayHereMoney.toDouble(payment.getStartupFee()));
+            }
+        }
+        if (payment.getMode() == PaymentRequest.MODE_AUTHORIZATION){
+            req.setHoldOnCardEnabled(true);
+        }
+        return req;
+    }
+
+    static InitPreapprovalRequest toPreapprovalRequest(PaymentRequest payment) {
+        InitPreapprovalRequest req = new InitPreapprovalRequest();
+        applyBase(req, payment);
+        return req;
+    }
+
+    private static void applyBase(InitBaseRequest req, PaymentRequest payment) {
+        req.setMerchantId(payment.getMerchantId());
+        req.setNotifyUrl(payment.getNotifyUrl());
+        req.setCurrency(payment.getCurrency());
+        req.setOrderId(payment.getOrderId());
+        req.setItemsDescription(payment.getItemsDescription());
+        if (payment.hasAmount()){
+            req.setAmount(PayHereMoney.toDouble(payment.getAmount()));
+        }
+        else if (payment.getMode() == PaymentRequest.MODE_PREAPPROVAL){
+            // The amount of a preapproval is optional, and sent as 0 when left out
+            req.setAmount(0.0);
+        }
+        if (payment.getCustom1() != null){
+            req.setCustom1(payment.getCustom1());
+        }
+        if (payment.getCustom2() != null){
+            req.setCustom2(payment.getCustom2());
+        }
+
+        Customer customer = req.getCustomer();
+        customer.setFirstName(payment.getFirstName());
+        customer.setLastName(payment.getLastName());
+        customer.setEmail(payment.getEmail());
+        customer.setPhone(payment.getPhone());
+
+        Address address = customer.getAddress();
+        address.setAddress(payment.getAddress());
+        address.setCity(payment.getCity());
+        address.setCountry(payment.getCountry());
+
+        Address delivery = customer.getDeliveryAddress();
+        if (payment.getDeliveryAddress() != null){
+            delivery.setAddress(payment.getDeliveryAddress());
+        }
+        if (payment.getDeliveryCity() != null){
+            delivery.setCity(payment.getDeliveryCity());
+        }
+        if (payment.getDeliveryCountry() != null){
+            delivery.setCountry(payment.getDeliveryCountry());
+        }
+
+        for (PaymentItem paymentItem : payment.getItems()){
+            Item item = new Item();
+            if (paymentItem.getId() != null){
+                item.setId(paymentItem.getId());
+            }
+            item.setName(paymentItem.getName());
+            item.setQuantity(paymentItem.getQuantity());
+            item.setAmount(PayHereMoney.toDouble(paymentItem.getAmount()));
+            req.getItems().add(item);
+        }
+    }
+}
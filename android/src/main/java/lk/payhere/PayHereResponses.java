@@ -0,0 +1,51 @@
+package lk.payhere;
+
+import lk.payhere.androidsdk.PHResponse;
+import lk.payhere.androidsdk.model.StatusResponse;
+import lk.payhere.core.PayHereError;
+
+/**
+ * Maps PayHere SDK responses to errors, through the core error mapping.
+ */
+final class PayHereResponses {
+
+    private PayHereResponses() {}
+
+    /**
+     * Maps a failed PayHere response to an error, reading the response fields directly.
+     * @param response Response returned by PHMainActivity (accepts null)
+     */
+    static PayHereError toError(PHResponse<StatusResponse> response) {
+        if (response == null){
+            return PayHereError.unknown("Unknown Error Occurred, response was null");
+        }
+
+        int status = response.getStatus();
+        StatusResponse data = response.getData();
+        return PayHereError.fromResponse(kindOf(status), status, response.getMessage(),
+                data == null ? PayHereError.NO_STATUS : data.getStatus(),
+                data == null ? null : data.getMessage());
+    }
+
+    /**
+     * @return The PayHereError.RESPONSE_* kind of a PHResponse status
+     */
+    static int kindOf(int status) {
+        switch (status){
+            case PHResponse.STATUS_ERROR_NETWORK:
+                return PayHereError.RESPONSE_NETWORK;
+            case PHResponse.STATUS_ERROR_VALIDATION:
+                return PayHereError.RESPONSE_VALIDATION;
+            case PHResponse.STATUS_ERROR_DATA:
+                return PayHereError.RESPONSE_DATA;
+            case PHResponse.STATUS_ERROR_CANCELED:
+                return PayHereError.RESPONSE_CANCELED;
+            case PHResponse.STATUS_ERROR_PAYMENT:
+                return PayHereError.RESPONSE_PAYMENT;
+            case PHResponse.STATUS_ERROR_UNKNOWN:
+                return PayHereError.RESPONSE_UNKNOWN;
+            default:
+                return PayHereError.RESPONSE_OTHER;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package lk.payhere;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Emits android.os.Trace sections for the phases of a payment, so they show up
+ * in Perfetto and systrace captures (category "app").
+ *
+ * Tracing is off by default. A disabled tracer returns before touching
+ * android.os.Trace, so the calls cost a field read.
+ *
+ * Enable it with {@link PayhereOfficialPackage#setTracingEnabled(boolean)}.
+ */
+final class PayHereTracer {
+
+    /** Synchronous sections, nested on the thread that runs the phase */
+    static final String START_PAYMENT = "PayHere:startPayment";
+    static final String PARSE = "PayHere:parse";
+    static final String BUILD_INTENT = "PayHere:buildIntent";
+    static final String START_ACTIVITY = "PayHere:startActivityForResult";
+    static final String RESULT = "PayHere:onActivityResult";
+    static final String DECODE_RESULT = "PayHere:decodeResult";
+    static final String SEND_RESULT = "PayHere:sendResult";
+
+    /** Async section from launching the PayHere activity to its result, keyed by the session ID */
+    static final String CHECKOUT = "PayHere:checkout";
+
+    static final PayHereTracer DISABLED = new PayHereTracer(false);
+    static final PayHereTracer SYSTRACE = new PayHereTracer(true);
+
+    private final boolean enabled;
+
+    private PayHereTracer(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens a section on the current thread. Must be matched by {@link #end()} on the same thread.
+     */
+    void begin(String name) {
+        if (enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2){
+            Trace.beginSection(name);
+        }
+    }
+
+    void end() {
+        if (enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2){
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Opens a section that may end on another thread.
+     * Only recorded on Android 10 and up, where the platform supports async sections.
+     * @param cookie Identifies the section among concurrent ones with the same name
+     */
+    void beginAsync(String name, int cookie) {
+        if (enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q){
+            Trace.beginAsyncSection(name, cookie);
+        }
+    }
+
+    void endAsync(String name, int cookie) {
+        if (enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q){
+            Trace.endAsyncSection(name, cookie);
+        }
+    }
+}
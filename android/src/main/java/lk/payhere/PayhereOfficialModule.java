@@ -4,990 +4,1408 @@ import android.app.Activity;
 import android.content.Intent;
 import android.nfc.Tag;
 import android.os.Bundle;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.facebook.react.bridge.ActivityEventListener;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lk.payhere.androidsdk.PHConfigs;
 import lk.payhere.androidsdk.PHConstants;
-import lk.payhere.androidsdk.PHMainActivity;
 import lk.payhere.androidsdk.PHResponse;
-import lk.payhere.androidsdk.model.Address;
-import lk.payhere.androidsdk.model.Customer;
-import lk.payhere.androidsdk.model.InitBaseRequest;
 import lk.payhere.androidsdk.model.InitPreapprovalRequest;
 import lk.payhere.androidsdk.model.InitRequest;
-import lk.payhere.androidsdk.model.Item;
 import lk.payhere.androidsdk.model.StatusResponse;
+import lk.payhere.core.LatencyHistogram;
+import lk.payhere.core.PayHereApi;
+import lk.payhere.core.PayHereError;
+import lk.payhere.core.PayHereItemProcessingException;
+import lk.payhere.core.PayHereKeyExtractionException;
+import lk.payhere.core.PayHereMoney;
+import lk.payhere.core.PaymentItem;
+import lk.payhere.core.PaymentJsonReader;
+import lk.payhere.core.PaymentKey;
+import lk.payhere.core.PaymentReader;
+import lk.payhere.core.PaymentRequest;
+import lk.payhere.core.PaymentStatus;
+import lk.payhere.core.PaymentStatusClient;
+import lk.payhere.core.PaymentValues;
 
 @SuppressWarnings("unused")
-public class PayhereOfficialModule extends ReactContextBaseJavaModule implements ActivityEventListener {
+public class PayhereOfficialModule extends PayhereOfficialSpec implements ActivityEventListener {
+
+    public final static String NAME = "PayhereOfficial";
+    private final static String PRELOAD_ERROR = "E_PRELOAD";
+    private final static String CONFIGURE_ERROR = "E_CONFIGURE";
+    private final static String PAYMENT_STATUS_ERROR = "E_PAYMENT_STATUS";
+
+    private final static String JOURNAL_PATH = "payhere/sessions.journal";
+    final static long DEFAULT_DUPLICATE_WINDOW_MS = 2000;
 
     private final static int PAYHERE_REQUEST = 11010;
+    /** Request codes PAYHERE_REQUEST .. PAYHERE_REQUEST + MAX_SESSIONS - 1 identify sessions */
+    private final static int MAX_SESSIONS = 256;
     private final ReactApplicationContext reactContext;
-    private Callback lastCallback = null;
+    private final PayHereLogger logger;
+    private final PaymentSessionRegistry sessions = new PaymentSessionRegistry(PAYHERE_REQUEST, MAX_SESSIONS);
+    private boolean preloadOnInitialize = false;
+    private PayHereTracer tracer = PayHereTracer.DISABLED;
+    /** How long after startPayment opened a session another call for the same order joins it */
+    private long duplicateWindowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DUPLICATE_WINDOW_MS);
+    private final PayHereMetrics metrics = new PayHereMetrics();
+    private ExecutorService backgroundExecutor = null;
+    private PaymentStatusClient statusClient = null;
+    private PaymentJournal journal = null;
+    /** Whether the module is registered for activity results. Guarded by this. */
+    private boolean listening = false;
+    /** Whether sessions of a previous process may still get their result, as far as the journal knows */
+    private volatile boolean awaitingRecovery = false;
+    /** Fields cached by configure(). Replaced as a whole, never modified. */
+    private volatile HashMap<String, Object> template = null;
 
     /* MARK: Definitions */
 
-    private static final class PaymentObjectKey{
-        public final static String sandbox = "sandbox";
-        public final static String merchantId = "merchant_id";
-        public final static String notifyUrl = "notify_url";
-        public final static String orderId = "order_id";
-        public final static String items = "items";
+    private static final class ItemObjectKey{
+        public final static String id = "id";
+        public final static String name = "name";
+        public final static String quantity = "quantity";
         public final static String amount = "amount";
-        public final static String currency = "currency";
-        public final static String firstName = "first_name";
-        public final static String lastName = "last_name";
-        public final static String email = "email";
-        public final static String phone = "phone";
-        public final static String address = "address";
-        public final static String city = "city";
-        public final static String country = "country";
-        public final static String deliveryAddress = "delivery_address";
-        public final static String deliveryCity = "delivery_city";
-        public final static String deliveryCountry = "delivery_country";
-        public final static String customOne = "custom_1";
-        public final static String customTwo = "custom_2";
-        public final static String recurrence = "recurrence";
-        public final static String duration = "duration";
-        public final static String startupFee = "startup_fee";
-        public final static String preapprove = "preapprove";
-        public final static String authorize = "authorize";
-        public final static String prefixItemNumber = "item_number_";
-        public final static String prefixItemName = "item_name_";
-        public final static String prefixItemAmount = "amount_";
-        public final static String prefixItemQuantity = "quantity_";
-
-        public PaymentObjectKey(){}
+
+        private ItemObjectKey(){}
     }
 
     private static final class ResultKey{
         public final static String success = "success";
         public final static String callbackType = "jscallback";
         public final static String data = "jsdata";
+        public final static String error = "jserror";
+        public final static String payment = "jspayment";
 
         private ResultKey(){}
     }
 
-    private static final class ResultCallbackType{
-        public final static String complete = "complete";
-        public final static String dismiss = "dismiss";
-        public final static String error = "error";
+    private static final class CompletionKey{
+        public final static String paymentNo = "paymentNo";
+        public final static String status = "status";
+        public final static String statusName = "statusName";
+        public final static String amount = "amount";
+        public final static String currency = "currency";
+        public final static String message = "message";
 
-        private ResultCallbackType(){}
+        private CompletionKey(){}
     }
 
-    private static final class PayHereItemProcessingException extends Exception{
-        private String reason;
+    private static final class PreloadKey{
+        public final static String durationMs = "durationMs";
+        public final static String alreadyLoaded = "alreadyLoaded";
 
-        /**
-         * The key's size was not as expected
-         * @param key
-         * @param size measured size of the key
-         */
-        public PayHereItemProcessingException(String key, int size){
-            this.reason = String.format("Empty key encountered. Key string: '%s' Size: %d", key, size);
-        }
+        private PreloadKey(){}
+    }
 
-        public PayHereItemProcessingException(){
-            this.reason = "Unknown Error Occurred while extracting Item data";
-        }
+    private static final class ValidationKey{
+        public final static String valid = "valid";
+        public final static String errors = "errors";
+        public final static String warnings = "warnings";
 
-        /**
-         * A key was present, but there was no number at the end of it.
-         * @param key
-         */
-        public PayHereItemProcessingException(String key){
-            this.reason = String.format("Could not find a number at the end of key, '%s'. Expected for example, 'some_key_1'.", key);
-        }
+        private ValidationKey(){}
+    }
 
-        /**
-         * A key was present, but the character at the end could not be parsed to a number.
-         * @param key
-         * @param value handles null or scenarios.
-         */
-        public PayHereItemProcessingException(String key, Object value){
-            String valueContents = value == null ? "null" : value.toString();
-            this.reason = String.format("Could not parse value '%s' at the end of key '%s' to a number. Expected for example, 'some_key_1'.", valueContents, key);
-        }
+    private static final class ErrorKey{
+        public final static String code = "code";
+        public final static String message = "message";
+        public final static String status = "status";
+        public final static String paymentStatus = "paymentStatus";
 
-        public PayHereItemProcessingException setCustomReason(String reason){
-            this.reason = reason;
-            return this;
-        }
+        private ErrorKey(){}
     }
 
-    private static final class PayHereKeyExtractionException extends Exception{
+    private static final class StatusOptionKey{
+        public final static String accessToken = "accessToken";
 
-        private String parameter;
-        private String type;
-        private Boolean keyExisted;
+        private StatusOptionKey(){}
+    }
 
-        /**
-         * Exception for key that exists, but failed to cast to String
-         * @param key Key of value extracted (e.g. 'merchant_id')
-         */
-        public PayHereKeyExtractionException(String key){
-            this.parameter = key;
-            this.type = "String";
-            this.keyExisted = true;
-        }
+    private static final class StatusKey{
+        public final static String found = "found";
+        public final static String message = "message";
+        public final static String paymentNo = "paymentNo";
+        public final static String orderId = "orderId";
+        public final static String date = "date";
+        public final static String status = "status";
+        public final static String currency = "currency";
+        public final static String amount = "amount";
+        public final static String method = "method";
+        public final static String cardHolderName = "cardHolderName";
+        public final static String cardNo = "cardNo";
 
-        /**
-         * Exception for key that may or may not exist, but failed to cast to String
-         * @param key Key of value extracted (e.g. 'merchant_id')
-         * @param keyExists Whether the key existed at point of extraction
-         */
-        public PayHereKeyExtractionException(String key, Boolean keyExists){
-            this.parameter = key;
-            this.type = "String";
-            this.keyExisted = keyExists;
-        }
+        private StatusKey(){}
+    }
 
-        /**
-         * Exception for key that exists, but failed to cast to type
-         * @param key Key of value extracted (e.g. 'merchant_id')
-         * @param type The type of the parameter expected but didn't exist (e.g. 'Boolean')
-         */
-        public PayHereKeyExtractionException(String key, String type){
-            this.parameter = key;
-            this.type = type;
-            this.keyExisted = true;
-        }
-        /**
-         * Exception for key that may or may not, but failed to cast to type
-         * @param key Key of value extracted (e.g. 'merchant_id')
-         * @param type The type of the parameter expected but didn't exist (e.g. 'Boolean')
-         * @param keyExists Whether the key existed at point of extraction
-         */
-        public PayHereKeyExtractionException(String key, String type, Boolean keyExists){
-            this.parameter = key;
-            this.type = type;
-            this.keyExisted = keyExists;
-        }
+    private static final class MetricsKey{
+        public final static String count = "count";
+        public final static String sumMs = "sumMs";
+        public final static String p50Ms = "p50Ms";
+        public final static String p90Ms = "p90Ms";
+        public final static String p99Ms = "p99Ms";
+        public final static String buckets = "buckets";
+        public final static String bucketBoundMs = "leMs";
+        public final static String byStatus = "byStatus";
+        /** byStatus key for outcomes without a PayHere response */
+        public final static String noStatus = "none";
+
+        private MetricsKey(){}
+    }
 
-        @Override
-        public String toString() {
-            return "PayHereKeyExtractionException{" +
-                    "parameter='" + parameter + '\'' +
-                    ", type='" + type + '\'' +
-                    ", keyExisted=" + keyExisted +
-                    '}';
-        }
+    private static final class PendingKey{
+        public final static String orderId = "orderId";
+        public final static String mode = "mode";
+        public final static String startedAt = "startedAt";
+        public final static String result = "result";
+
+        private PendingKey(){}
+    }
+
+    private static final class ResultCallbackType{
+        public final static String complete = "complete";
+        public final static String dismiss = "dismiss";
+        public final static String error = "error";
+
+        private ResultCallbackType(){}
     }
 
     /* END MARK: Definitions */
 
+    /**
+     * Payment object keys that may be cached with configure().
+     * These describe the merchant and customer, and rarely change between orders.
+     */
+    private static final HashSet<String> TEMPLATE_KEYS = new HashSet<>(Arrays.asList(
+            PaymentKey.sandbox,
+            PaymentKey.merchantId,
+            PaymentKey.notifyUrl,
+            PaymentKey.currency,
+            PaymentKey.firstName,
+            PaymentKey.lastName,
+            PaymentKey.email,
+            PaymentKey.phone,
+            PaymentKey.address,
+            PaymentKey.city,
+            PaymentKey.country,
+            PaymentKey.deliveryAddress,
+            PaymentKey.deliveryCity,
+            PaymentKey.deliveryCountry
+    ));
+
+    /**
+     * Payment object keys holding customer details.
+     * Their values are masked when a payment is logged with PII redaction on.
+     */
+    private static final HashSet<String> PII_KEYS = new HashSet<>(Arrays.asList(
+            PaymentKey.firstName,
+            PaymentKey.lastName,
+            PaymentKey.email,
+            PaymentKey.phone,
+            PaymentKey.address,
+            PaymentKey.city,
+            PaymentKey.country,
+            PaymentKey.deliveryAddress,
+            PaymentKey.deliveryCity,
+            PaymentKey.deliveryCountry
+    ));
+
     public PayhereOfficialModule(ReactApplicationContext reactContext) {
+        this(reactContext, PayHereLogger.DEFAULT);
+    }
+
+    public PayhereOfficialModule(ReactApplicationContext reactContext, PayHereLogger logger) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.logger = logger;
     }
 
-    @NonNull
-    @Override
-    public String getName() {
-        return "PayhereOfficial";
+    /**
+     * Warm up the PayHere SDK in the background as soon as the module is initialized.
+     */
+    void setPreloadOnInitialize(boolean preloadOnInitialize) {
+        this.preloadOnInitialize = preloadOnInitialize;
     }
 
-    @ReactMethod
-    public void startPayment(ReadableMap payment, Callback callback) {
+    /**
+     * Emit android.os.Trace sections for each phase of a payment.
+     */
+    void setTracingEnabled(boolean tracingEnabled) {
+        this.tracer = tracingEnabled ? PayHereTracer.SYSTRACE : PayHereTracer.DISABLED;
+    }
 
-        String errorString;
-        HashMap<String, Object> paymentObject = payment.toHashMap();
+    /**
+     * @param windowMs How long after startPayment opened a session a call for the
+     *                 same order (order_id, amount and mode) joins it, or 0 to never join
+     */
+    void setDuplicateWindowMs(long windowMs) {
+        this.duplicateWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMs));
+    }
 
-        this.lastCallback = callback;
+    /**
+     * Receive every payment measurement as it is recorded.
+     */
+    void setMetricsSink(PayHereMetrics.Sink sink) {
+        metrics.setSink(sink);
+    }
 
-        this.log(payment.toHashMap().toString());
+    @NonNull
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void initialize() {
+        super.initialize();
 
         /*
-         * PayHere Android SDK sends result to activity, not custom listener.
-         *
-         * Since we're a module, adding this React listener is the only
-         * way to tap into the activity result.
+         * Listen from the start, not only from the first startPayment: after the
+         * process was killed during a checkout, its result arrives right away.
+         * Once the journal shows no checkout of a previous process is waiting,
+         * the listener is only kept while payments are in progress.
          */
-        reactContext.addActivityEventListener(this);
+        awaitingRecovery = true;
+        this.listen();
+        this.backgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                awaitingRecovery = journal().awaitsAnyResult();
+                stopListeningIfIdle();
+            }
+        });
+
+        if (preloadOnInitialize){
+            PayHerePreloader.preloadAsync(this.backgroundExecutor(), new PayHerePreloader.Listener() {
+                @Override
+                public void onPreloaded(PayHerePreloader.Result result) {
+                    if (logger.isLoggable(PayHereLogger.DEBUG)){
+                        logger.debug("Preloaded PayHere SDK in " + result.durationMs + "ms");
+                    }
+                }
 
-        if (payment.hasKey(PaymentObjectKey.preapprove) && payment.getBoolean(PaymentObjectKey.preapprove))
-            errorString = this.createAndLaunchPreapprovalRequest(paymentObject, reactContext);
-        else if (paymentObject.containsKey(PaymentObjectKey.authorize) && (boolean) paymentObject.get(PaymentObjectKey.authorize)){
-            errorString = this.createAndLaunchAuthorizationRequest(paymentObject, reactContext);
+                @Override
+                public void onPreloadFailed(Throwable error) {
+                    logger.warn("Could not preload PayHere SDK: " + error);
+                }
+            });
         }
-        else{
-            boolean recurrenceCheck = payment.hasKey(PaymentObjectKey.recurrence) && payment.getString(PaymentObjectKey.recurrence) != null;
-            boolean durationCheck = payment.hasKey(PaymentObjectKey.duration) && payment.getString(PaymentObjectKey.duration) != null;
+    }
 
-            if (recurrenceCheck && durationCheck)
-                errorString = this.createAndLaunchRecurringRequest(paymentObject, reactContext);
-            else
-                errorString = this.createAndLaunchOnetimeRequest(paymentObject, reactContext);
+    /**
+     * The React instance is being torn down (e.g. reloaded in development).
+     * Stops listening for activity results and drops in-flight sessions without
+     * calling back, so their JS callbacks are not kept alive. Their checkouts stay
+     * in the journal, and the next instance reports them through getPendingResults.
+     */
+    @Override
+    public void invalidate() {
+        synchronized (this){
+            awaitingRecovery = false;
+            if (listening){
+                reactContext.removeActivityEventListener(this);
+                listening = false;
+            }
         }
 
-        if (errorString != null){
-            // Error occurred. Request is not launched.
-            // Invoke callback with error details.
+        for (PaymentSessionRegistry.Session session : sessions.closeAll()){
+            tracer.endAsync(PayHereTracer.CHECKOUT, session.id);
+            CheckoutRequests.release(session.id);
+        }
 
-            this.sendError(errorString);
+        synchronized (this){
+            if (backgroundExecutor != null){
+                backgroundExecutor.shutdown();
+                backgroundExecutor = null;
+            }
+            if (statusClient != null){
+                statusClient.close();
+                statusClient = null;
+            }
+            if (journal != null){
+                journal.stop();
+            }
         }
 
+        super.invalidate();
     }
 
+    @ReactMethod
     @Override
-    public void onActivityResult(Activity activity, int requestCode, int resultCode, Intent data) {
-        if (requestCode == PAYHERE_REQUEST) {
-            if (data != null && data.hasExtra(PHConstants.INTENT_EXTRA_RESULT)) {
-                PHResponse<StatusResponse> response = (PHResponse<StatusResponse>) data.getSerializableExtra(PHConstants.INTENT_EXTRA_RESULT);
-
-                if (resultCode == Activity.RESULT_OK) {
-                    String msg;
-                    if (response != null){
-                        msg = "Response: " + response.toString();
-                        if (response.getData() == null){
-                            if (response.isSuccess()){
-                                this.sendError("Internal Error. Could not map success response.");
-                            }
-                            else{
-                                this.handleAsError(response);
-                            }
-                        }
-                        else{
-                            StatusResponse status = response.getData();
-                            if (status.getStatus() == StatusResponse.Status.SUCCESS.value() ||
-                                    status.getStatus() == StatusResponse.Status.HOLD.value()){
-
-                                msg = "Activity result:" + response.getData().toString();
-                                String paymentNo = Long.toString(response.getData().getPaymentNo());
-                                this.sendCompleted(paymentNo);
-
-                            }
-                            else{
-                                this.handleAsError(response);
-                            }
-                        }
-                    }
-                    else {
-                        msg = "Result: no response";
-                        this.log(msg);
-                        this.sendDismissed();
-                    }
-                } else if (resultCode == Activity.RESULT_CANCELED) {
-                    if (response != null){
-                        switch(response.getStatus()){
-                            case PHResponse.STATUS_ERROR_CANCELED:
-                                this.sendDismissed();
-                                break;
-
-                            case PHResponse.STATUS_ERROR_NETWORK:
-                                this.sendError("Network Error");
-                                break;
-
-                            case PHResponse.STATUS_ERROR_VALIDATION:
-                                this.sendError("Parameter Validation Error");
-                                break;
-
-                            case PHResponse.STATUS_ERROR_DATA:
-                                this.sendError("Intent Data not Present");
-                                break;
-
-                            case PHResponse.STATUS_ERROR_UNKNOWN:
-                            case PHResponse.STATUS_ERROR_PAYMENT:
-                            default:
-                                this.handleAsError(response);
-                                break;
-                        }
-                    }
-                    else
-                        this.sendDismissed();
-                }
-            }
-            else if (data == null){
-                this.sendDismissed();
-            }
+    public void startPayment(ReadableMap payment, Callback callback) {
+        tracer.begin(PayHereTracer.START_PAYMENT);
+        try {
+            this.startSession(payment, null, callback);
+        }
+        finally {
+            tracer.end();
         }
     }
 
-    private void handleAsError(PHResponse<StatusResponse> response){
-        if (response == null){
-            this.sendError("Unknown Error Occurred, response was null");
-            return;
+    /**
+     * Starts a payment given as JSON text, e.g. a payment object prepared by the merchant's server.
+     * The JSON is streamed straight into the payment request, without building a JS object
+     * or a map first. Supports the same fields and modes as startPayment, and calls back the same way.
+     */
+    @ReactMethod
+    @Override
+    public void startPaymentJson(String paymentJson, Callback callback) {
+        tracer.begin(PayHereTracer.START_PAYMENT);
+        try {
+            this.startSession(null, paymentJson, callback);
+        }
+        finally {
+            tracer.end();
         }
+    }
 
-        String resStr = response.toString();
-        String errMsg = null;
-        try{
-            Pattern pattern = Pattern.compile("message='(.+?)',");
-            Matcher m = pattern.matcher(resStr);
-            if (m.find() && m.groupCount() >= 1){
-                errMsg = m.group(1);
-            }
+    /**
+     * @param payment Payment object, or null to read paymentJson
+     * @param paymentJson Payment object as JSON text, used when payment is null
+     */
+    private void startSession(ReadableMap payment, String paymentJson, Callback callback) {
+        long startedAt = System.nanoTime();
+
+        if (logger.isLoggable(PayHereLogger.DEBUG)){
+            if (payment != null)
+                logger.debug(this.describePayment(payment.toHashMap()));
+            else
+                logger.debug("Payment JSON of " + (paymentJson == null ? 0 : paymentJson.length()) + " chars");
+        }
+
+        PaymentRequest parsed;
+        tracer.begin(PayHereTracer.PARSE);
+        try {
+            parsed = payment != null
+                    ? this.parsePayment(payment, null)
+                    : PaymentJsonReader.parse(paymentJson, this.template, null);
         }
-        catch(Exception e){
-            this.sendError("Unknown error occurred while extracting error message");
+        catch(IOException exc){
+            this.failStart(callback, PayHereError.validation("Malformed payment JSON: " + exc.getMessage()), startedAt);
             return;
         }
-
-        if(errMsg != null){
-            this.sendError(errMsg);
+        catch(PayHereKeyExtractionException exc){
+            this.failStart(callback, PayHereError.validation(exc.toString()), startedAt);
             return;
         }
-
-        if (response.getData() == null){
-            this.sendError("Unknown Error Occurred. PayHere Response was null.");
+        catch(PayHereItemProcessingException exc){
+            this.failStart(callback, PayHereError.validation(exc.getReason()), startedAt);
+            return;
         }
-        else{
-            if (response.getData().getMessage() == null){
-                this.sendError("Unknown Error Occurred.");
+        finally {
+            metrics.recordParse(System.nanoTime() - startedAt);
+            tracer.end();
+        }
+
+        if (logger.isLoggable(PayHereLogger.WARN)){
+            String warning = itemTotalWarning(parsed);
+            if (warning != null){
+                logger.warn(warning + ", order " + parsed.getOrderId());
             }
-            else{
-                this.sendError(response.getData().getMessage());
+        }
+
+        // A repeated call for the same order (e.g. a double tap) shares the checkout already launched
+        String fingerprint = PaymentSessionRegistry.fingerprint(parsed.getOrderId(), parsed.getAmount(), parsed.getMode());
+        PaymentSessionRegistry.Session running = sessions.join(fingerprint, callback, duplicateWindowNanos);
+        if (running != null){
+            if (logger.isLoggable(PayHereLogger.DEBUG)){
+                logger.debug("Order " + parsed.getOrderId() + " is already in progress, joined session " + running.id);
             }
+            return;
         }
-    }
 
-    @Override
-    public void onNewIntent(Intent intent) {
-        // No implementation
-    }
+        PaymentSessionRegistry.Session session = sessions.open(fingerprint, callback);
+        if (session == null){
+            this.failStart(callback, PayHereError.unknown("Too many payments in progress"), startedAt);
+            return;
+        }
 
-    private void log(String msg){
-        Log.d("PayHere", msg);
+        /*
+         * PayHere Android SDK sends result to activity, not custom listener.
+         *
+         * Since we're a module, adding this React listener is the only
+         * way to tap into the activity result.
+         */
+        this.listen();
+        session.journalKey = this.journal().open(session.id, parsed.getOrderId(), parsed.getMode());
+
+        long launchStart = System.nanoTime();
+        this.launchPayment(parsed, session.id, reactContext);
+        metrics.recordLaunch(System.nanoTime() - launchStart);
     }
 
+    /**
+     * Fails a startPayment call before a session was opened for it.
+     */
+    private void failStart(Callback callback, PayHereError error, long startedAtNanos){
+        this.sendError(callback, error);
+        metrics.recordTimeToResult(System.nanoTime() - startedAtNanos);
+    }
 
     /**
-     * Send an error message back to JS interface
-     * JS: onError
-     * @param error Error msg to pass (accepts null)
+     * Runs the same checks as startPayment without launching a payment.
+     * Resolves with {valid, errors, warnings}, where errors lists every problem found
+     * and warnings lists what is allowed but probably a mistake, such as items that
+     * do not add up to the amount.
      */
-    private void sendError(String error){
+    @ReactMethod
+    @Override
+    public void validatePayment(ReadableMap payment, Promise promise) {
+        promise.resolve(this.validate(payment));
+    }
 
-        if (lastCallback == null){
-            throw new RuntimeException("callback must not be null");
+    /**
+     * Validates many payment objects in parallel on a background executor.
+     * Resolves with an array of {valid, errors, warnings}, in the order of the payments.
+     */
+    @ReactMethod
+    @Override
+    public void validatePayments(final ReadableArray payments, final Promise promise) {
+        final int count = payments.size();
+        if (count == 0){
+            promise.resolve(Arguments.createArray());
+            return;
         }
 
-        String finalError = error == null ? "Null error" : error;
-
-        WritableMap map = Arguments.createMap();
-
-        map.putBoolean(ResultKey.success, false);
-        map.putString(ResultKey.callbackType, ResultCallbackType.error);
-        map.putString(ResultKey.data, finalError);
+        final WritableMap[] results = new WritableMap[count];
+        final AtomicInteger remaining = new AtomicInteger(count);
+        ExecutorService executor = this.backgroundExecutor();
+
+        for (int i = 0; i < count; i++){
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    WritableMap result;
+                    if (payments.getType(index) == ReadableType.Map){
+                        result = validate(payments.getMap(index));
+                    }
+                    else{
+                        result = validationResult(Collections.singletonList("Payment at index " + index + " is not an object"), Collections.<String>emptyList());
+                    }
+                    results[index] = result;
 
-        lastCallback.invoke(map);
+                    if (remaining.decrementAndGet() == 0){
+                        WritableArray array = Arguments.createArray();
+                        for (WritableMap r : results){
+                            array.pushMap(r);
+                        }
+                        promise.resolve(array);
+                    }
+                }
+            });
+        }
     }
 
-    /**
-     * Send a dismissed message back to JS interface
-     * JS: onDismissed
-     */
-    private void sendDismissed(){
+    private WritableMap validate(ReadableMap payment){
+        ArrayList<String> errors = new ArrayList<>();
+        ArrayList<String> warnings = new ArrayList<>();
+        try {
+            PaymentRequest parsed = this.parsePayment(payment, errors);
+            String warning = itemTotalWarning(parsed);
+            if (warning != null){
+                warnings.add(warning);
+            }
+        }
+        catch(PayHereKeyExtractionException exc){
+            errors.add(exc.toString());
+        }
+        catch(PayHereItemProcessingException exc){
+            errors.add(exc.getReason());
+        }
+        return validationResult(errors, warnings);
+    }
 
-        if (lastCallback == null){
-            throw new RuntimeException("callback must not be null");
+    private static WritableMap validationResult(List<String> errors, List<String> warnings){
+        WritableArray errorArray = Arguments.createArray();
+        for (String error : errors){
+            errorArray.pushString(error);
+        }
+        WritableArray warningArray = Arguments.createArray();
+        for (String warning : warnings){
+            warningArray.pushString(warning);
         }
 
         WritableMap map = Arguments.createMap();
-
-        map.putBoolean(ResultKey.success, false);
-        map.putString(ResultKey.callbackType, ResultCallbackType.dismiss);
-
-        lastCallback.invoke(map);
+        map.putBoolean(ValidationKey.valid, errors.isEmpty());
+        map.putArray(ValidationKey.errors, errorArray);
+        map.putArray(ValidationKey.warnings, warningArray);
+        return map;
     }
 
     /**
-     * Send a dismissed message back to JS interface
-     * JS: onCompleted
-     * @param data A string to send back (usually PayHere paymentID)
+     * Items may legitimately not add up to the amount (shipping, tax, discounts), so a
+     * mismatch does not fail the payment. It is reported as a warning instead.
+     * @return Description of the mismatch, or null if the items add up or there are none
      */
-    private void sendCompleted(String data){
-
-        if (lastCallback == null){
-            throw new RuntimeException("callback must not be null");
+    private static String itemTotalWarning(PaymentRequest parsed){
+        if (parsed == null || !parsed.hasItemTotal() || !parsed.hasAmount() || parsed.getItemTotal() == parsed.getAmount()){
+            return null;
         }
-
-        WritableMap map = Arguments.createMap();
-
-        map.putBoolean(ResultKey.success, true);
-        map.putString(ResultKey.callbackType, ResultCallbackType.complete);
-        map.putString(ResultKey.data, data);
-
-        lastCallback.invoke(map);
+        int scale = PayHereMoney.scaleOf(parsed.getCurrency());
+        return "Item total " + PayHereMoney.format(parsed.getItemTotal(), scale)
+                + " differs from amount " + PayHereMoney.format(parsed.getAmount(), scale);
     }
 
     /**
-     * Extracts a String Key from a HashMap.
-     * @param map Map to extract keys from
-     * @param key Key of value to extract
-     * @return String value of extracted key. Null is never returned: exception thrown instead.
-     * @throws PayHereKeyExtractionException Key extraction error information
+     * Shared executor for work that must not run on the native modules thread.
      */
-    private String extract(HashMap<String, Object> map, String key) throws PayHereKeyExtractionException{
-        if (map.containsKey(key)){
-            Object raw = map.get(key);
-            if (raw == null){
-                throw new PayHereKeyExtractionException(key, "Object", true);
-            }
-            else{
-                try {
-                    return raw.toString();
-                }
-                catch(Exception e){
-                    throw new PayHereKeyExtractionException(key, true);
-                }
+    private ExecutorService backgroundExecutor(){
+        synchronized (this){
+            if (backgroundExecutor == null){
+                int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+                backgroundExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "PayHere-background-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
             }
-        }
-        else{
-            throw new PayHereKeyExtractionException(key, false);
+            return backgroundExecutor;
         }
     }
 
     /**
-     * Extracts an int Key from a HashMap.
-     * @param map Map to extract keys from
-     * @param key Key of value to extract
-     * @return int value of extracted key. If an error occurred, an exception will be thrown.
-     * @throws PayHereKeyExtractionException Key extraction error information
+     * Loads and initializes the PayHere SDK classes on the background executor.
+     * Resolves with {durationMs, alreadyLoaded}.
+     * The SDK's environment is not touched: each checkout applies its own (see
+     * PayHereCheckoutActivity.applyEnvironment).
      */
-    private int extractInteger(HashMap<String, Object> map, String key) throws PayHereKeyExtractionException{
-        if (map.containsKey(key)){
-            Object raw = map.get(key);
-            if (raw == null){
-                throw new PayHereKeyExtractionException(key, "Object", true);
+    @ReactMethod
+    @Override
+    public void preload(final Promise promise) {
+        PayHerePreloader.preloadAsync(this.backgroundExecutor(), new PayHerePreloader.Listener() {
+            @Override
+            public void onPreloaded(PayHerePreloader.Result result) {
+                WritableMap map = Arguments.createMap();
+                map.putDouble(PreloadKey.durationMs, result.durationMs);
+                map.putBoolean(PreloadKey.alreadyLoaded, result.alreadyLoaded);
+                promise.resolve(map);
             }
-            else{
-                try {
-                    String tmpStr = this.extract(map, key);
-                    return Integer.parseInt(tmpStr);
-                }
-                catch(Exception e){
-                    throw new PayHereKeyExtractionException(key, true);
-                }
+
+            @Override
+            public void onPreloadFailed(Throwable error) {
+                promise.reject(PRELOAD_ERROR, "Could not preload PayHere SDK", error);
             }
-        }
-        else{
-            throw new PayHereKeyExtractionException(key, false);
-        }
+        });
     }
 
     /**
-     * Extracts a String Key from a HashMap.
-     * If the key doesnt exist, returns null.
-     * @param map Map to extract keys from
-     * @param key Key of value to extract
-     * @return String value of extracted key. Null is returned if key or value doesn't exist.
+     * Caches merchant and customer fields, so startPayment only needs the per-order fields.
+     * Fields passed to startPayment take precedence over the cached ones.
+     * @param template Any of 'sandbox', 'merchant_id', 'notify_url', 'currency' and the
+     *                 customer and address fields. Pass null to clear the cache.
      */
-    private String extractOptional(HashMap<String, Object> map, String key){
-        if (map.containsKey(key)){
-            Object raw = map.get(key);
-            if (raw == null){
-                return null;
-            }
-            else{
-                try {
-                    return raw.toString();
+    @ReactMethod
+    @Override
+    public void configure(ReadableMap template, Promise promise) {
+        if (template == null){
+            this.template = null;
+            promise.resolve(null);
+            return;
+        }
+
+        HashMap<String, Object> parsed = new HashMap<>();
+        ReadableMapKeySetIterator iterator = template.keySetIterator();
+
+        try {
+            while (iterator.hasNextKey()){
+                String key = iterator.nextKey();
+                if (!TEMPLATE_KEYS.contains(key)){
+                    promise.reject(CONFIGURE_ERROR, "'" + key + "' cannot be part of a payment template");
+                    return;
+                }
+                if (template.isNull(key)){
+                    continue;
+                }
+
+                ReadableType type = template.getType(key);
+                if (PaymentKey.sandbox.equals(key)){
+                    if (type == ReadableType.Boolean)
+                        parsed.put(key, template.getBoolean(key));
+                    else if (type == ReadableType.String)
+                        parsed.put(key, Boolean.valueOf(template.getString(key)));
+                    else
+                        throw new PayHereKeyExtractionException(key, "Boolean", true);
+                }
+                else if (type == ReadableType.String){
+                    parsed.put(key, template.getString(key));
                 }
-                catch(Exception e){
-                    return null;
+                else if (type == ReadableType.Number){
+                    parsed.put(key, PaymentValues.formatNumber(template.getDouble(key)));
+                }
+                else{
+                    throw new PayHereKeyExtractionException(key, true);
                 }
             }
         }
-        else{
-            return null;
+        catch(PayHereKeyExtractionException exc){
+            promise.reject(CONFIGURE_ERROR, exc.toString());
+            return;
         }
+
+        this.template = parsed;
+        promise.resolve(null);
     }
 
     /**
-     * Extracts an PayHere Amount from HashMap.
-     * @param map Map to extract keys from
-     * @param key Key of value to extract
-     * @param skip bool value for skip amount key (preapproval)
-     * @return Double value of extracted key. Null is never returned: exception thrown instead.
-     * @throws PayHereKeyExtractionException Key extraction error information
+     * Queries the status of the latest payment for an order through the PayHere Retrieval API.
+     * Concurrent queries for an order share one request, failed requests are retried with
+     * backoff and results are reused for a few seconds.
+     * Resolves with {found, message, paymentNo, orderId, date, status, currency, amount,
+     * method, cardHolderName, cardNo}.
+     * @param options {accessToken, sandbox} The access token must be obtained by the merchant's
+     *                server, as it needs the app secret. 'sandbox' defaults to the configured one.
      */
-    private Double extractAmount(HashMap<String, Object> map, String key,boolean skip) throws PayHereKeyExtractionException{
-        if (map.containsKey(key)){
-            Object raw = map.get(key);
-            if ( !skip && raw == null){
-                throw new PayHereKeyExtractionException(key, "Object", true);
-            }
-            else{
-                try {
-                 
-                    //ignore moount key if slip is true
-                    if(skip){
-                        if(raw == null)
-                         return  Double.valueOf("0");
-                        String str = raw.toString().trim();
-                    if( str.equals("")){
-                        return Double.valueOf("0");
-                     }
-                    }
+    @ReactMethod
+    @Override
+    public void getPaymentStatus(String orderId, ReadableMap options, final Promise promise) {
+        if (orderId == null || orderId.isEmpty()){
+            promise.reject(PAYMENT_STATUS_ERROR, "'order_id' is required");
+            return;
+        }
+        if (options == null || !hasValue(options, StatusOptionKey.accessToken)
+                || options.getType(StatusOptionKey.accessToken) != ReadableType.String){
+            promise.reject(PAYMENT_STATUS_ERROR, "'accessToken' is required");
+            return;
+        }
 
-                    String str = raw.toString();
-                    return Double.valueOf(str);
-                }
-                catch(Exception e){
-                    throw new PayHereKeyExtractionException(key, "Double", true);
-                }
-            }
+        boolean isSandbox;
+        if (hasValue(options, PaymentKey.sandbox)){
+            isSandbox = isTrue(options, PaymentKey.sandbox);
         }
         else{
+            HashMap<String, Object> template = this.template;
+            isSandbox = template != null && Boolean.TRUE.equals(template.get(PaymentKey.sandbox));
+        }
 
-            if(skip)
-                return Double.valueOf("0");
+        this.statusClient().getStatus(
+                PayHereApi.baseUrl(checkoutBaseUrl(isSandbox)),
+                orderId,
+                options.getString(StatusOptionKey.accessToken),
+                new PaymentStatusClient.Listener() {
+                    @Override
+                    public void onStatus(PaymentStatus status) {
+                        promise.resolve(statusDetails(status));
+                    }
+
+                    @Override
+                    public void onError(Exception error) {
+                        promise.reject(PAYMENT_STATUS_ERROR, error.getMessage(), error);
+                    }
+                });
+    }
 
-            throw new PayHereKeyExtractionException(key, false);
+    private PaymentStatusClient statusClient(){
+        synchronized (this){
+            if (statusClient == null){
+                statusClient = new PaymentStatusClient(this.backgroundExecutor());
+            }
+            return statusClient;
         }
     }
 
+    private static WritableMap statusDetails(PaymentStatus status){
+        WritableMap map = Arguments.createMap();
+        map.putBoolean(StatusKey.found, status.isFound());
+        map.putString(StatusKey.message, status.getMessage());
+        if (status.isFound()){
+            map.putString(StatusKey.paymentNo, String.valueOf(status.getPaymentNo()));
+            map.putString(StatusKey.orderId, status.getOrderId());
+            map.putString(StatusKey.date, status.getDate());
+            map.putString(StatusKey.status, status.getStatus());
+            map.putString(StatusKey.currency, status.getCurrency());
+            map.putDouble(StatusKey.amount, status.getAmount());
+            map.putString(StatusKey.method, status.getMethod());
+            map.putString(StatusKey.cardHolderName, status.getCardHolderName());
+            map.putString(StatusKey.cardNo, status.getCardNo());
+        }
+        return map;
+    }
 
     /**
-     * Extracts an PayHere Amount from HashMap.
-     * If the key doesnt exist, returns null.
-     * @param map Map to extract keys from
-     * @param key Key of value to extract
-     * @return Double value of extracted key. Null is returned if key or value doesn't exist.
+     * Reads the payment metrics recorded since the module was created.
+     * Resolves with {parse, launch, timeToResult} latency histograms
+     * ({count, sumMs, p50Ms, p90Ms, p99Ms, buckets: [{leMs, count}]}, leMs is null for the last bucket)
+     * and {completed, dismissed, error} counters ({count, byStatus}), where byStatus is keyed by
+     * PHResponse status, or 'none' for outcomes without a PayHere response.
      */
-    private Double extractOptionalAmount(HashMap<String, Object> map, String key){
-        if (map.containsKey(key)){
-            Object raw = map.get(key);
-            if (raw == null){
-                return null;
-            }
-            else{
-                try {
-                    String str = raw.toString();
-                    return Double.valueOf(str);
-                }
-                catch(Exception e){
-                    return null;
-                }
-            }
+    @ReactMethod
+    @Override
+    public void getMetrics(Promise promise) {
+        WritableMap map = Arguments.createMap();
+        map.putMap(PayHereMetrics.PARSE, histogramDetails(metrics.getParseLatency()));
+        map.putMap(PayHereMetrics.LAUNCH, histogramDetails(metrics.getLaunchLatency()));
+        map.putMap(PayHereMetrics.TIME_TO_RESULT, histogramDetails(metrics.getTimeToResult()));
+        map.putMap(PayHereMetrics.COMPLETED, outcomeDetails(metrics.getCompleted()));
+        map.putMap(PayHereMetrics.DISMISSED, outcomeDetails(metrics.getDismissed()));
+        map.putMap(PayHereMetrics.ERROR, outcomeDetails(metrics.getErrors()));
+        promise.resolve(map);
+    }
+
+    private static WritableMap histogramDetails(LatencyHistogram histogram){
+        WritableArray buckets = Arguments.createArray();
+        for (int i = 0; i < histogram.getBucketCount(); i++){
+            WritableMap bucket = Arguments.createMap();
+            long bound = histogram.getBucketBoundMs(i);
+            if (bound == Long.MAX_VALUE)
+                bucket.putNull(MetricsKey.bucketBoundMs);
+            else
+                bucket.putDouble(MetricsKey.bucketBoundMs, bound);
+            bucket.putDouble(MetricsKey.count, histogram.getBucketValue(i));
+            buckets.pushMap(bucket);
         }
-        else{
-            return null;
+
+        WritableMap map = Arguments.createMap();
+        map.putDouble(MetricsKey.count, histogram.getCount());
+        map.putDouble(MetricsKey.sumMs, histogram.getSumNanos() / 1e6);
+        putPercentile(map, MetricsKey.p50Ms, histogram.getPercentileBoundMs(50));
+        putPercentile(map, MetricsKey.p90Ms, histogram.getPercentileBoundMs(90));
+        putPercentile(map, MetricsKey.p99Ms, histogram.getPercentileBoundMs(99));
+        map.putArray(MetricsKey.buckets, buckets);
+        return map;
+    }
+
+    private static void putPercentile(WritableMap map, String key, long boundMs){
+        if (boundMs == Long.MAX_VALUE)
+            map.putNull(key);
+        else
+            map.putDouble(key, boundMs);
+    }
+
+    private static WritableMap outcomeDetails(PayHereMetrics.OutcomeCounter counter){
+        WritableMap byStatus = Arguments.createMap();
+        for (Map.Entry<Integer, AtomicLong> entry : counter.byStatus().entrySet()){
+            String key = entry.getKey() == PayHereError.NO_STATUS ? MetricsKey.noStatus : entry.getKey().toString();
+            byStatus.putDouble(key, entry.getValue().get());
         }
+
+        WritableMap map = Arguments.createMap();
+        map.putDouble(MetricsKey.count, counter.getCount());
+        map.putMap(MetricsKey.byStatus, byStatus);
+        return map;
     }
 
     /**
-     * Extracts a bool from HashMap.
-     * @param map Map to extract keys from
-     * @param key Key of value to extract
-     * @return Boolean value of extracted key. Null is never returned: exception thrown instead.
-     * @throws PayHereKeyExtractionException Key extraction error information
+     * Collects the payments a previous process launched but could not report, because
+     * Android killed it during the checkout. Each is returned once.
+     * Resolves with an array of {orderId, mode, startedAt, result}. result is what
+     * startPayment's callback would have received, or null if no result arrived:
+     * check those with getPaymentStatus.
      */
-    private Boolean extractBoolean(HashMap<String, Object> map, String key) throws PayHereKeyExtractionException{
-        if (map.containsKey(key)){
-            Object raw = map.get(key);
-            if (raw == null){
-                throw new PayHereKeyExtractionException(key, true);
-            }
-            else{
-                try {
-                    String str = raw.toString();
-                    return Boolean.valueOf(str);
-                }
-                catch(Exception e){
-                    throw new PayHereKeyExtractionException(key, true);
+    @ReactMethod
+    @Override
+    public void getPendingResults(Promise promise) {
+        WritableArray array = Arguments.createArray();
+        for (PaymentJournal.Entry entry : this.journal().takeRecovered()){
+            WritableMap map = Arguments.createMap();
+            map.putString(PendingKey.orderId, entry.orderId);
+            map.putString(PendingKey.mode, PaymentRequest.modeName(entry.mode));
+            map.putDouble(PendingKey.startedAt, entry.startedAtMillis);
+            if (entry.result != null)
+                map.putMap(PendingKey.result, JsonMaps.toWritableMap(entry.result));
+            else
+                map.putNull(PendingKey.result);
+            array.pushMap(map);
+        }
+        // Results that arrive for these sessions from now on have nowhere to go
+        awaitingRecovery = false;
+        this.stopListeningIfIdle();
+        promise.resolve(array);
+    }
+
+    @Override
+    public void onActivityResult(Activity activity, int requestCode, int resultCode, Intent data) {
+        if (sessions.owns(requestCode)) {
+            tracer.begin(PayHereTracer.RESULT);
+            try {
+                PaymentSessionRegistry.Session session = sessions.close(requestCode);
+                if (session == null){
+                    this.recoverResult(requestCode, resultCode, data);
+                    return;
                 }
+                tracer.endAsync(PayHereTracer.CHECKOUT, requestCode);
+                CheckoutRequests.release(requestCode);
+
+                this.deliverResult(session.callback, resultCode, data);
+                metrics.recordTimeToResult(System.nanoTime() - session.openedAtNanos);
+                this.closeJournal(session);
+            }
+            finally {
+                this.stopListeningIfIdle();
+                tracer.end();
             }
-        }
-        else{
-            throw new PayHereKeyExtractionException(key, false);
         }
     }
 
-    private ArrayList<Item> extractItems(HashMap<String, Object> map) throws PayHereItemProcessingException, PayHereKeyExtractionException{
-        HashMap<Integer, Item> itemMap = new HashMap<>();
+    private void deliverResult(Callback callback, int resultCode, Intent data) {
 
-        for(Map.Entry<String, Object> entry: map.entrySet()){
-            try{
-                String key = entry.getKey();
-                if (key == null || key.isEmpty()){
-                    continue;
-                }
+        if (data != null && data.hasExtra(PHConstants.INTENT_EXTRA_RESULT)) {
+            tracer.begin(PayHereTracer.DECODE_RESULT);
+            PHResponse<StatusResponse> response;
+            try {
+                response = (PHResponse<StatusResponse>) data.getSerializableExtra(PHConstants.INTENT_EXTRA_RESULT);
+            }
+            finally {
+                tracer.end();
+            }
 
-                if (key.startsWith(PaymentObjectKey.prefixItemNumber)){
-                    int index = getIndex(key);
-                    Item item = initOrGetItem(index, itemMap);
-                    item.setId(this.extract(map, key));
-                }
-                else if (key.startsWith(PaymentObjectKey.prefixItemName)){
-                    int index = getIndex(key);
-                    Item item = initOrGetItem(index, itemMap);
-                    item.setName(this.extract(map, key));
+            if (resultCode == Activity.RESULT_OK) {
+                if (response != null){
+                    if (logger.isLoggable(PayHereLogger.DEBUG)){
+                        logger.debug("Response: " + response);
+                    }
+                    if (response.getData() == null){
+                        if (response.isSuccess()){
+                            this.sendError(callback, new PayHereError(PayHereError.CODE_UNKNOWN, "Internal Error. Could not map success response.", response.getStatus(), PayHereError.NO_STATUS));
+                        }
+                        else{
+                            this.sendError(callback, PayHereResponses.toError(response));
+                        }
+                    }
+                    else{
+                        StatusResponse status = response.getData();
+                        if (status.getStatus() == StatusResponse.Status.SUCCESS.value() ||
+                                status.getStatus() == StatusResponse.Status.HOLD.value()){
+
+                            this.sendCompleted(callback, response.getStatus(), status);
+
+                        }
+                        else{
+                            this.sendError(callback, PayHereResponses.toError(response));
+                        }
+                    }
                 }
-                else if (key.startsWith(PaymentObjectKey.prefixItemQuantity)){
-                    int index = getIndex(key);
-                    Item item = initOrGetItem(index, itemMap);
-                    item.setQuantity(this.extractInteger(map, key));
+                else {
+                    this.log("Result: no response");
+                    this.sendDismissed(callback, PayHereError.NO_STATUS);
                 }
-                else if (key.startsWith(PaymentObjectKey.prefixItemAmount)){
-                    int index = getIndex(key);
-                    Item item = initOrGetItem(index, itemMap);
-                    item.setAmount(this.extractAmount(map, key,false));
+            } else if (resultCode == Activity.RESULT_CANCELED) {
+                if (response != null){
+                    switch(response.getStatus()){
+                        case PHResponse.STATUS_ERROR_CANCELED:
+                            this.sendDismissed(callback, response.getStatus());
+                            break;
+
+                        default:
+                            this.sendError(callback, PayHereResponses.toError(response));
+                            break;
+                    }
                 }
-            }
-            catch(PayHereKeyExtractionException exc){
-                throw exc;
-            }
-            catch(PayHereItemProcessingException exc){
-                throw exc;
+                else
+                    this.sendDismissed(callback, PayHereError.NO_STATUS);
             }
         }
+        else if (data == null){
+            this.sendDismissed(callback, PayHereError.NO_STATUS);
+        }
+        else{
+            this.sendError(callback, new PayHereError(PayHereError.CODE_INTENT_DATA, "Result not present in activity result", PayHereError.NO_STATUS, PayHereError.NO_STATUS));
+        }
+    }
 
-        return new ArrayList<Item>(itemMap.values());
+    @Override
+    public void onNewIntent(Intent intent) {
+        // No implementation
     }
 
-    private int getIndex(String key) throws PayHereItemProcessingException{
-        if (key == null){
-            return -1;
+    /**
+     * Registers for activity results, if not already registered.
+     */
+    private synchronized void listen(){
+        if (!listening){
+            reactContext.addActivityEventListener(this);
+            listening = true;
         }
+    }
 
-        // Keys will have atleast one '_' due to logic in this.extractItems.
-        // So: components.length >= 1
-        String[] components = key.split("_");
-        String last = components[components.length - 1];
-
-        try {
-            int index = Integer.parseInt(last);
-            return index;
-        }
-        catch(NumberFormatException exc){
-            throw new PayHereItemProcessingException(key, last);
+    /**
+     * Unregisters from activity results once no payment is in progress and
+     * no checkout of a previous process is waiting for its result.
+     */
+    private synchronized void stopListeningIfIdle(){
+        if (listening && !awaitingRecovery && sessions.activeCount() == 0){
+            reactContext.removeActivityEventListener(this);
+            listening = false;
         }
     }
 
     /**
-     * Looks for the item with index in the map. If found returns it.
-     * Otherwise, creates one AND PUTS IT IN THE MAP then returns it.
+     * Ends a session that failed before its activity was launched.
      */
-    private Item initOrGetItem(int index, HashMap<Integer, Item> map){
-        Item item = map.get(index);
-        if (item == null){
-            item = new Item();
-            map.put(index, item);
-            return item;
-        }
-        else{
-            return item;
+    private void failSession(int sessionId, PayHereError error){
+        PaymentSessionRegistry.Session session = sessions.close(sessionId);
+        CheckoutRequests.release(sessionId);
+        if (session != null){
+            this.sendError(session.callback, error);
+            metrics.recordTimeToResult(System.nanoTime() - session.openedAtNanos);
+            this.closeJournal(session);
         }
+        this.stopListeningIfIdle();
     }
 
-    private String createAndLaunchOnetimeRequest(HashMap<String, Object> o, ReactApplicationContext reactContext){
-        String error = null;
+    private void closeJournal(PaymentSessionRegistry.Session session){
+        if (session.journalKey != null){
+            this.journal().close(session.journalKey);
+        }
+    }
 
-        try {
+    /**
+     * Keeps the result of a session this process did not start, if the journal
+     * shows a previous process launched it. JS collects it with getPendingResults.
+     */
+    private void recoverResult(int requestCode, int resultCode, Intent data){
+        PaymentJournal journal = this.journal();
+        if (!journal.awaitsResult(requestCode)){
+            logger.warn("Ignoring result of unknown or already completed payment session " + requestCode);
+            return;
+        }
 
-            ArrayList<Item> items = this.extractItems(o);
+        final ReadableMap[] result = new ReadableMap[1];
+        this.deliverResult(new Callback() {
+            @Override
+            public void invoke(Object... args) {
+                result[0] = (ReadableMap) args[0];
+            }
+        }, resultCode, data);
 
-            InitRequest req = new InitRequest();
+        if (result[0] != null){
+            journal.recover(requestCode, JsonMaps.toJson(result[0]));
+        }
+        awaitingRecovery = journal.awaitsAnyResult();
+    }
 
-            req.setMerchantId(          this.extract(o,         PaymentObjectKey.merchantId));
-            req.setNotifyUrl(           this.extract(o,         PaymentObjectKey.notifyUrl));
-            req.setCurrency(            this.extract(o,         PaymentObjectKey.currency));
-            req.setAmount(              this.extractAmount(o,   PaymentObjectKey.amount,false));
-            req.setOrderId(             this.extract(o,         PaymentObjectKey.orderId));
-            req.setItemsDescription(    this.extract(o,         PaymentObjectKey.items));
+    PaymentJournal journal(){
+        synchronized (this){
+            if (journal == null){
+                journal = new PaymentJournal(new File(reactContext.getFilesDir(), JOURNAL_PATH), logger);
+            }
+            return journal;
+        }
+    }
 
-            String custom1 =            this.extractOptional(o, PaymentObjectKey.customOne);
-            String custom2 =            this.extractOptional(o, PaymentObjectKey.customTwo);
+    private void log(String msg){
+        logger.debug(msg);
+    }
 
-            if (custom1 != null) {
-                req.setCustom1(custom1);
+    /**
+     * Formats a payment object for logging, masking customer details
+     * unless the logger was configured not to.
+     * Only call this after checking the logger's level.
+     */
+    private String describePayment(HashMap<String, Object> paymentObject){
+        boolean redact = logger.redactsPii();
+        StringBuilder builder = new StringBuilder("Payment{");
+        boolean first = true;
+
+        for (Map.Entry<String, Object> entry : paymentObject.entrySet()){
+            if (!first){
+                builder.append(", ");
             }
+            first = false;
 
-            if (custom2 != null) {
-                req.setCustom2(custom2);
+            builder.append(entry.getKey()).append('=');
+            if (redact && PII_KEYS.contains(entry.getKey()) && entry.getValue() != null){
+                builder.append("<redacted>");
             }
+            else{
+                builder.append(entry.getValue());
+            }
+        }
 
-            Customer customer = req.getCustomer();
-            customer.setFirstName(      this.extract(o,         PaymentObjectKey.firstName));
-            customer.setLastName(       this.extract(o,         PaymentObjectKey.lastName));
-            customer.setEmail(          this.extract(o,         PaymentObjectKey.email));
-            customer.setPhone(          this.extract(o,         PaymentObjectKey.phone));
-
-            Address customerAddress = customer.getAddress();
-            customerAddress.setAddress( this.extract(o,         PaymentObjectKey.address));
-            customerAddress.setCity(    this.extract(o,         PaymentObjectKey.city));
-            customerAddress.setCountry( this.extract(o,         PaymentObjectKey.country));
-
-            Address customerDeliveryAddress = customer.getDeliveryAddress();
-            String deliveryAddress =    this.extractOptional(o, PaymentObjectKey.deliveryAddress);
-            String deliveryCity =       this.extractOptional(o, PaymentObjectKey.deliveryCity);
-            String deliveryCountry =    this.extractOptional(o, PaymentObjectKey.deliveryCountry);
-
-            if (deliveryAddress != null)
-                customerDeliveryAddress.setAddress(deliveryAddress);
-
-            if (deliveryCity != null)
-                customerDeliveryAddress.setCity(deliveryCity);
-
-            if (deliveryCountry != null)
-                customerDeliveryAddress.setCountry(deliveryCountry);
+        return builder.append('}').toString();
+    }
 
-            req.getItems().addAll(items);
 
-            Boolean isSandbox = this.extractBoolean(o,          PaymentObjectKey.sandbox);
-            this.launchRequest(req, reactContext, isSandbox);
+    /**
+     * Send an error back to JS interface
+     * JS: onError
+     * @param callback Callback of the payment session
+     * @param error Error to pass. The message is sent as the first argument
+     *              and the structured error ({code, message, status, paymentStatus}) as the second.
+     */
+    private void sendError(Callback callback, PayHereError error){
+        metrics.recordError(error.status);
 
+        if (callback == null){
+            logger.warn("Lost reference to callback");
+            return;
         }
-        catch(PayHereKeyExtractionException exc){
-            error = exc.toString();
+
+        WritableMap details = Arguments.createMap();
+        details.putString(ErrorKey.code, error.code);
+        details.putString(ErrorKey.message, error.message);
+        if (error.status != PayHereError.NO_STATUS){
+            details.putInt(ErrorKey.status, error.status);
         }
-        catch(PayHereItemProcessingException exc){
-            error = exc.reason;
+        if (error.paymentStatus != PayHereError.NO_STATUS){
+            details.putInt(ErrorKey.paymentStatus, error.paymentStatus);
         }
 
-        return error;
-    }
-
-    private String createAndLaunchRecurringRequest(HashMap<String, Object> o, ReactApplicationContext reactContext){
-        String error = null;
+        WritableMap map = Arguments.createMap();
 
-        try {
+        map.putBoolean(ResultKey.success, false);
+        map.putString(ResultKey.callbackType, ResultCallbackType.error);
+        map.putString(ResultKey.data, error.message);
+        map.putMap(ResultKey.error, details);
 
-            ArrayList<Item> items = this.extractItems(o);
-            InitRequest req = new InitRequest();
-
-            req.setMerchantId(          this.extract(o,         PaymentObjectKey.merchantId));
-            req.setNotifyUrl(           this.extract(o,         PaymentObjectKey.notifyUrl));
-            req.setCurrency(            this.extract(o,         PaymentObjectKey.currency));
-            req.setAmount(              this.extractAmount(o,   PaymentObjectKey.amount,false));
-            req.setRecurrence(          this.extract(o,         PaymentObjectKey.recurrence));
-            req.setDuration(            this.extract(o,         PaymentObjectKey.duration));
-            req.setOrderId(             this.extract(o,         PaymentObjectKey.orderId));
-            req.setItemsDescription(    this.extract(o,         PaymentObjectKey.items));
-
-            Double startupFee =         this.extractOptionalAmount(o, PaymentObjectKey.startupFee);
-            if (startupFee != null){
-                req.setStartupFee(startupFee);
-            }
+        this.invoke(callback, map);
+    }
 
-            String custom1 =            this.extractOptional(o, PaymentObjectKey.customOne);
-            String custom2 =            this.extractOptional(o, PaymentObjectKey.customTwo);
+    /**
+     * Send a dismissed message back to JS interface
+     * JS: onDismissed
+     * @param callback Callback of the payment session
+     * @param responseStatus PHResponse status, or PayHereError.NO_STATUS if there was no response
+     */
+    private void sendDismissed(Callback callback, int responseStatus){
+        metrics.recordDismissed(responseStatus);
 
-            if (custom1 != null) {
-                req.setCustom1(custom1);
-            }
+        if (callback == null){
+            logger.warn("Lost reference to callback");
+            return;
+        }
 
-            if (custom2 != null) {
-                req.setCustom2(custom2);
-            }
+        WritableMap map = Arguments.createMap();
 
-            Customer customer = req.getCustomer();
-            customer.setFirstName(      this.extract(o,         PaymentObjectKey.firstName));
-            customer.setLastName(       this.extract(o,         PaymentObjectKey.lastName));
-            customer.setEmail(          this.extract(o,         PaymentObjectKey.email));
-            customer.setPhone(          this.extract(o,         PaymentObjectKey.phone));
+        map.putBoolean(ResultKey.success, false);
+        map.putString(ResultKey.callbackType, ResultCallbackType.dismiss);
 
-            Address customerAddress = customer.getAddress();
-            customerAddress.setAddress( this.extract(o,         PaymentObjectKey.address));
-            customerAddress.setCity(    this.extract(o,         PaymentObjectKey.city));
-            customerAddress.setCountry( this.extract(o,         PaymentObjectKey.country));
+        this.invoke(callback, map);
+    }
 
-            Address customerDeliveryAddress = customer.getDeliveryAddress();
-            String deliveryAddress =    this.extractOptional(o, PaymentObjectKey.deliveryAddress);
-            String deliveryCity =       this.extractOptional(o, PaymentObjectKey.deliveryCity);
-            String deliveryCountry =    this.extractOptional(o, PaymentObjectKey.deliveryCountry);
+    /**
+     * Send a completed payment back to JS interface
+     * JS: onCompleted
+     * @param callback Callback of the payment session
+     * @param responseStatus PHResponse status
+     * @param status Status of the completed payment. The PayHere payment number is sent
+     *               as the first argument and the payment details as the second.
+     */
+    private void sendCompleted(Callback callback, int responseStatus, StatusResponse status){
+        metrics.recordCompleted(responseStatus);
 
-            if (deliveryAddress != null)
-                customerDeliveryAddress.setAddress(deliveryAddress);
+        if (callback == null){
+            logger.warn("Lost reference to callback");
+            return;
+        }
 
-            if (deliveryCity != null)
-                customerDeliveryAddress.setCity(deliveryCity);
+        String paymentNo = Long.toString(status.getPaymentNo());
 
-            if (deliveryCountry != null)
-                customerDeliveryAddress.setCountry(deliveryCountry);
+        WritableMap map = Arguments.createMap();
 
-            req.getItems().addAll(items);
+        map.putBoolean(ResultKey.success, true);
+        map.putString(ResultKey.callbackType, ResultCallbackType.complete);
+        map.putString(ResultKey.data, paymentNo);
+        map.putMap(ResultKey.payment, completionDetails(status, paymentNo));
 
-            Boolean isSandbox = this.extractBoolean(o,          PaymentObjectKey.sandbox);
-            this.launchRequest(req, reactContext, isSandbox);
+        this.invoke(callback, map);
+    }
 
+    /**
+     * Payment details of a completed payment: {paymentNo, status, statusName, amount, currency, message}.
+     * StatusResponse carries no payment method or card details, those still come with the notify_url callback.
+     */
+    private static WritableMap completionDetails(StatusResponse status, String paymentNo){
+        boolean isHold = status.getStatus() == StatusResponse.Status.HOLD.value();
+
+        WritableMap details = Arguments.createMap();
+        details.putString(CompletionKey.paymentNo, paymentNo);
+        details.putInt(CompletionKey.status, status.getStatus());
+        details.putString(CompletionKey.statusName, isHold ? StatusResponse.Status.HOLD.name() : StatusResponse.Status.SUCCESS.name());
+        details.putDouble(CompletionKey.amount, status.getPrice());
+        if (status.getCurrency() != null){
+            details.putString(CompletionKey.currency, status.getCurrency());
         }
-        catch(PayHereKeyExtractionException exc){
-            error = exc.toString();
-        }
-        catch(PayHereItemProcessingException exc){
-            error = exc.reason;
+        if (status.getMessage() != null){
+            details.putString(CompletionKey.message, status.getMessage());
         }
-
-        return error;
+        return details;
     }
 
-    private String createAndLaunchPreapprovalRequest(HashMap<String, Object> o, ReactApplicationContext reactContext){
-        String error = null;
-
-        try {
-
-            ArrayList<Item> items = this.extractItems(o);
-            InitPreapprovalRequest req = new InitPreapprovalRequest();
-
-            req.setMerchantId(          this.extract(o,         PaymentObjectKey.merchantId));
-            req.setNotifyUrl(           this.extract(o,         PaymentObjectKey.notifyUrl));
-            req.setCurrency(            this.extract(o,         PaymentObjectKey.currency));
-            req.setOrderId(             this.extract(o,         PaymentObjectKey.orderId));
-            req.setItemsDescription(    this.extract(o,         PaymentObjectKey.items));
-            req.setAmount(              this.extractAmount(o,   PaymentObjectKey.amount,true));    
-
-            String custom1 =            this.extractOptional(o, PaymentObjectKey.customOne);
-            String custom2 =            this.extractOptional(o, PaymentObjectKey.customTwo);
+    /**
+     * Decodes an 'items' array of {id, name, quantity, amount} objects.
+     * 'id' is optional, the other fields are required.
+     * @param array Items array as received from JS
+     * @return Items in array order
+     * @throws PayHereKeyExtractionException An element or field was missing or of the wrong type
+     */
+    private ArrayList<PaymentItem> extractItemArray(ReadableArray array) throws PayHereKeyExtractionException{
+        int size = array.size();
+        ArrayList<PaymentItem> items = new ArrayList<>(size);
 
-            if (custom1 != null) {
-                req.setCustom1(custom1);
+        for (int i = 0; i < size; i++){
+            if (array.getType(i) != ReadableType.Map){
+                throw new PayHereKeyExtractionException(PaymentKey.items + "[" + i + "]", "Object", !array.isNull(i));
             }
 
-            if (custom2 != null) {
-                req.setCustom2(custom2);
+            ReadableMap element = array.getMap(i);
+            String id = null;
+            if (element.hasKey(ItemObjectKey.id) && !element.isNull(ItemObjectKey.id)){
+                id = this.readItemString(element, ItemObjectKey.id, i);
             }
 
-            Customer customer = req.getCustomer();
-            customer.setFirstName(      this.extract(o,         PaymentObjectKey.firstName));
-            customer.setLastName(       this.extract(o,         PaymentObjectKey.lastName));
-            customer.setEmail(          this.extract(o,         PaymentObjectKey.email));
-            customer.setPhone(          this.extract(o,         PaymentObjectKey.phone));
-
-            Address customerAddress = customer.getAddress();
-            customerAddress.setAddress( this.extract(o,         PaymentObjectKey.address));
-            customerAddress.setCity(    this.extract(o,         PaymentObjectKey.city));
-            customerAddress.setCountry( this.extract(o,         PaymentObjectKey.country));
-
-            Address customerDeliveryAddress = customer.getDeliveryAddress();
-            String deliveryAddress =    this.extractOptional(o, PaymentObjectKey.deliveryAddress);
-            String deliveryCity =       this.extractOptional(o, PaymentObjectKey.deliveryCity);
-            String deliveryCountry =    this.extractOptional(o, PaymentObjectKey.deliveryCountry);
-
-            if (deliveryAddress != null)
-                customerDeliveryAddress.setAddress(deliveryAddress);
-
-            if (deliveryCity != null)
-                customerDeliveryAddress.setCity(deliveryCity);
+            items.add(new PaymentItem(
+                    id,
+                    this.readItemString(element, ItemObjectKey.name, i),
+                    this.readItemQuantity(element, i),
+                    this.readItemAmount(element, i)));
+        }
 
-            if (deliveryCountry != null)
-                customerDeliveryAddress.setCountry(deliveryCountry);
+        return items;
+    }
 
-            req.getItems().addAll(items);
+    private String readItemString(ReadableMap element, String key, int index) throws PayHereKeyExtractionException{
+        switch (this.requireItemField(element, key, index)){
+            case String:
+                return element.getString(key);
+            case Number:
+                return PaymentValues.formatNumber(element.getDouble(key));
+            default:
+                throw new PayHereKeyExtractionException(itemFieldKey(index, key), true);
+        }
+    }
 
-            Boolean isSandbox = this.extractBoolean(o,          PaymentObjectKey.sandbox);
-            this.launchRequest(req, reactContext, isSandbox);
+    private int readItemQuantity(ReadableMap element, int index) throws PayHereKeyExtractionException{
+        String key = ItemObjectKey.quantity;
+        switch (this.requireItemField(element, key, index)){
+            case Number:
+                return PaymentValues.toInteger(itemFieldKey(index, key), element.getDouble(key));
+            case String:
+                return PaymentValues.toInteger(itemFieldKey(index, key), element.getString(key));
+            default:
+                throw new PayHereKeyExtractionException(itemFieldKey(index, key), "Integer", true);
+        }
+    }
 
+    /**
+     * @return Amount in micros (see PayHereMoney)
+     */
+    private long readItemAmount(ReadableMap element, int index) throws PayHereKeyExtractionException{
+        String key = ItemObjectKey.amount;
+        switch (this.requireItemField(element, key, index)){
+            case Number:
+                return PaymentValues.toAmount(itemFieldKey(index, key), element.getDouble(key));
+            case String:
+                return PaymentValues.toAmount(itemFieldKey(index, key), element.getString(key));
+            default:
+                throw new PayHereKeyExtractionException(itemFieldKey(index, key), "Double", true);
         }
-        catch(PayHereKeyExtractionException exc){
-            error = exc.toString();
+    }
+
+    /**
+     * @return Type of the item field
+     * @throws PayHereKeyExtractionException The field was missing or null
+     */
+    private ReadableType requireItemField(ReadableMap element, String key, int index) throws PayHereKeyExtractionException{
+        if (!element.hasKey(key)){
+            throw new PayHereKeyExtractionException(itemFieldKey(index, key), false);
         }
-        catch(PayHereItemProcessingException exc){
-            error = exc.reason;
+        ReadableType type = element.getType(key);
+        if (type == ReadableType.Null){
+            throw new PayHereKeyExtractionException(itemFieldKey(index, key), "Object", true);
         }
+        return type;
+    }
 
-        return error;
+    private static String itemFieldKey(int index, String key){
+        return PaymentKey.items + "[" + index + "]." + key;
     }
 
-    private String createAndLaunchAuthorizationRequest(HashMap<String, Object> o, ReactApplicationContext reactContext){
-        String error = null;
+    /**
+     * Items description to send when 'items' carries the item list.
+     * Uses 'items_description' if given, otherwise joins the item names.
+     */
+    private String describeItems(ReadableMap payment, ArrayList<PaymentItem> items){
+        String key = PaymentKey.itemsDescription;
+        if (payment.hasKey(key) && !payment.isNull(key)){
+            ReadableType type = payment.getType(key);
+            if (type == ReadableType.String)
+                return payment.getString(key);
+            if (type == ReadableType.Number)
+                return PaymentValues.formatNumber(payment.getDouble(key));
+        }
+        return PaymentItem.describe(items);
+    }
 
-        try {
+    /**
+     * Picks the payment mode from the flags and fields present in the payment object.
+     * None of these keys can come from the configure() template, so the payment object alone decides.
+     */
+    private static int paymentMode(ReadableMap payment){
+        return PaymentReader.mode(
+                isTrue(payment, PaymentKey.preapprove),
+                isTrue(payment, PaymentKey.authorize),
+                hasValue(payment, PaymentKey.recurrence) && hasValue(payment, PaymentKey.duration));
+    }
 
-            ArrayList<Item> items = this.extractItems(o);
-            InitRequest req = new InitRequest();
+    private static boolean isTrue(ReadableMap map, String key){
+        return map.hasKey(key) && map.getType(key) == ReadableType.Boolean && map.getBoolean(key);
+    }
 
-            req.setMerchantId(          this.extract(o,         PaymentObjectKey.merchantId));
-            req.setNotifyUrl(           this.extract(o,         PaymentObjectKey.notifyUrl));
-            req.setCurrency(            this.extract(o,         PaymentObjectKey.currency));
-            req.setAmount(              this.extractAmount(o,   PaymentObjectKey.amount,false));
-            req.setOrderId(             this.extract(o,         PaymentObjectKey.orderId));
-            req.setItemsDescription(    this.extract(o,         PaymentObjectKey.items));
+    private static boolean hasValue(ReadableMap map, String key){
+        return map.hasKey(key) && !map.isNull(key);
+    }
 
-            String custom1 =            this.extractOptional(o, PaymentObjectKey.customOne);
-            String custom2 =            this.extractOptional(o, PaymentObjectKey.customTwo);
+    /**
+     * Reads and checks a payment object received from JS, without launching it.
+     *
+     * The ReadableMap is read in place: it is never copied into a HashMap, and each value
+     * is passed to the PaymentReader with the getter for its JS type. Fields the payment
+     * object leaves out (or sets to null) are then filled from the configure() template.
+     * @param payment Payment object as received from JS
+     * @param errors If null, the first error is thrown. Otherwise every error is added to the list.
+     */
+    private PaymentRequest parsePayment(ReadableMap payment, ArrayList<String> errors) throws PayHereKeyExtractionException, PayHereItemProcessingException{
+        PaymentReader reader = new PaymentReader(paymentMode(payment), errors);
 
-            if (custom1 != null) {
-                req.setCustom1(custom1);
+        ArrayList<PaymentItem> arrayItems = null;
+        if (payment.hasKey(PaymentKey.items) && payment.getType(PaymentKey.items) == ReadableType.Array){
+            try {
+                arrayItems = this.extractItemArray(payment.getArray(PaymentKey.items));
             }
-
-            if (custom2 != null) {
-                req.setCustom2(custom2);
+            catch(PayHereKeyExtractionException exc){
+                if (errors == null)
+                    throw exc;
+                errors.add(exc.toString());
+                arrayItems = new ArrayList<>();
             }
+            reader.string(PaymentKey.items, this.describeItems(payment, arrayItems));
+        }
 
-            Customer customer = req.getCustomer();
-            customer.setFirstName(      this.extract(o,         PaymentObjectKey.firstName));
-            customer.setLastName(       this.extract(o,         PaymentObjectKey.lastName));
-            customer.setEmail(          this.extract(o,         PaymentObjectKey.email));
-            customer.setPhone(          this.extract(o,         PaymentObjectKey.phone));
-
-            Address customerAddress = customer.getAddress();
-            customerAddress.setAddress( this.extract(o,         PaymentObjectKey.address));
-            customerAddress.setCity(    this.extract(o,         PaymentObjectKey.city));
-            customerAddress.setCountry( this.extract(o,         PaymentObjectKey.country));
-
-            Address customerDeliveryAddress = customer.getDeliveryAddress();
-            String deliveryAddress =    this.extractOptional(o, PaymentObjectKey.deliveryAddress);
-            String deliveryCity =       this.extractOptional(o, PaymentObjectKey.deliveryCity);
-            String deliveryCountry =    this.extractOptional(o, PaymentObjectKey.deliveryCountry);
-
-            if (deliveryAddress != null)
-                customerDeliveryAddress.setAddress(deliveryAddress);
-
-            if (deliveryCity != null)
-                customerDeliveryAddress.setCity(deliveryCity);
-
-            if (deliveryCountry != null)
-                customerDeliveryAddress.setCountry(deliveryCountry);
+        ReadableMapKeySetIterator iterator = payment.keySetIterator();
+        while (iterator.hasNextKey()){
+            String key = iterator.nextKey();
+            switch (payment.getType(key)){
+                case String:
+                    reader.string(key, payment.getString(key));
+                    break;
+                case Number:
+                    reader.number(key, payment.getDouble(key));
+                    break;
+                case Boolean:
+                    reader.bool(key, payment.getBoolean(key));
+                    break;
+                case Null:
+                    reader.nullValue(key);
+                    break;
+                case Array:
+                    reader.array(key);
+                    break;
+                default:
+                    reader.object(key);
+                    break;
+            }
+        }
 
-            req.getItems().addAll(items);
-            req.setHoldOnCardEnabled(true);
+        HashMap<String, Object> template = this.template;
+        if (template != null){
+            for (Map.Entry<String, Object> entry : template.entrySet()){
+                reader.readDefault(entry.getKey(), entry.getValue());
+            }
+        }
 
-            Boolean isSandbox = this.extractBoolean(o,          PaymentObjectKey.sandbox);
-            this.launchRequest(req, reactContext, isSandbox);
+        return reader.finish(arrayItems);
+    }
 
+    /**
+     * Hands a result to the JS callback.
+     */
+    private void invoke(Callback callback, WritableMap result){
+        tracer.begin(PayHereTracer.SEND_RESULT);
+        try {
+            callback.invoke(result);
         }
-        catch(PayHereKeyExtractionException exc){
-            error = exc.toString();
-        }
-        catch(PayHereItemProcessingException exc){
-            error = exc.reason;
+        finally {
+            tracer.end();
         }
+    }
 
-        return error;
+    private void launchPayment(PaymentRequest payment, int requestCode, ReactApplicationContext reactContext){
+        if (payment.getMode() == PaymentRequest.MODE_PREAPPROVAL)
+            this.launchRequest(PayHereRequests.toPreapprovalRequest(payment), requestCode, reactContext, payment.isSandbox());
+        else
+            this.launchRequest(PayHereRequests.toInitRequest(payment), requestCode, reactContext, payment.isSandbox());
     }
 
-    private void launchRequest(InitRequest req, ReactApplicationContext reactContext, boolean isSandbox){
-        Intent intent = new Intent(reactContext, PHMainActivity.class);
-        intent.putExtra(PHConstants.INTENT_EXTRA_DATA, req);
+    /**
+     * Base URL of the environment, as the SDK defines it. Status queries use the same server.
+     */
+    private static String checkoutBaseUrl(boolean isSandbox){
+        return isSandbox ? PHConfigs.SANDBOX_URL : PHConfigs.LIVE_URL;
+    }
 
-        if (isSandbox)
-            PHConfigs.setBaseUrl(PHConfigs.SANDBOX_URL);
-        else
-            PHConfigs.setBaseUrl(PHConfigs.LIVE_URL);
+    private void launchRequest(InitRequest req, int requestCode, ReactApplicationContext reactContext, boolean isSandbox){
+        tracer.begin(PayHereTracer.BUILD_INTENT);
+        CheckoutRequests.put(requestCode, req);
+        String baseUrl = checkoutBaseUrl(isSandbox);
+        Intent intent = PayHereCheckoutActivity.createIntent(reactContext, requestCode, baseUrl);
+        tracer.end();
 
-        reactContext.startActivityForResult(intent, PAYHERE_REQUEST, Bundle.EMPTY);
+        this.startActivity(intent, requestCode, reactContext);
     }
 
-    private void launchRequest(InitPreapprovalRequest req, ReactApplicationContext reactContext, boolean isSandbox){
-        Intent intent = new Intent(reactContext, PHMainActivity.class);
-        intent.putExtra(PHConstants.INTENT_EXTRA_DATA, req);
+    private void launchRequest(InitPreapprovalRequest req, int requestCode, ReactApplicationContext reactContext, boolean isSandbox){
+        tracer.begin(PayHereTracer.BUILD_INTENT);
+        CheckoutRequests.put(requestCode, req);
+        String baseUrl = checkoutBaseUrl(isSandbox);
+        Intent intent = PayHereCheckoutActivity.createIntent(reactContext, requestCode, baseUrl);
+        tracer.end();
 
-        if (isSandbox)
-            PHConfigs.setBaseUrl(PHConfigs.SANDBOX_URL);
-        else
-            PHConfigs.setBaseUrl(PHConfigs.LIVE_URL);
+        this.startActivity(intent, requestCode, reactContext);
+    }
 
-        reactContext.startActivityForResult(intent, PAYHERE_REQUEST, Bundle.EMPTY);
+    /**
+     * Launches the PayHere activity. The checkout async trace section
+     * stays open until the result arrives.
+     */
+    private void startActivity(Intent intent, int requestCode, ReactApplicationContext reactContext){
+        tracer.beginAsync(PayHereTracer.CHECKOUT, requestCode);
+        tracer.begin(PayHereTracer.START_ACTIVITY);
+        boolean started;
+        try {
+            started = reactContext.startActivityForResult(intent, requestCode, Bundle.EMPTY);
+        }
+        finally {
+            tracer.end();
+        }
+
+        if (!started){
+            tracer.endAsync(PayHereTracer.CHECKOUT, requestCode);
+            this.failSession(requestCode, PayHereError.unknown("Could not launch PayHere: no current activity"));
+        }
     }
 }
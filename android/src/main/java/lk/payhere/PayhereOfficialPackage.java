@@ -1,18 +1,108 @@
 package lk.payhere;
 
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import com.facebook.react.ReactPackage;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.TurboReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 import com.facebook.react.uimanager.ViewManager;
 
-public class PayhereOfficialPackage implements ReactPackage {
+public class PayhereOfficialPackage extends TurboReactPackage {
+    private final PayHereLogger logger;
+    private boolean preloadOnInitialize = false;
+    private boolean tracingEnabled = false;
+    private PayHereMetrics.Sink metricsSink = null;
+    private long duplicateWindowMs = PayhereOfficialModule.DEFAULT_DUPLICATE_WINDOW_MS;
+
+    public PayhereOfficialPackage() {
+        this(PayHereLogger.DEFAULT);
+    }
+
+    /**
+     * @param logger Logger for the PayHere module. Use this to change the log
+     *               level or route logs to your own sink.
+     */
+    public PayhereOfficialPackage(PayHereLogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Warm up the PayHere SDK on a background thread when the module is initialized,
+     * instead of on the first checkout.
+     */
+    public PayhereOfficialPackage setPreloadOnInitialize(boolean preloadOnInitialize) {
+        this.preloadOnInitialize = preloadOnInitialize;
+        return this;
+    }
+
+    /**
+     * Emit android.os.Trace sections for each phase of a payment, so checkouts
+     * can be profiled with Perfetto or systrace. Off by default.
+     */
+    public PayhereOfficialPackage setTracingEnabled(boolean tracingEnabled) {
+        this.tracingEnabled = tracingEnabled;
+        return this;
+    }
+
+    /**
+     * Receive payment latencies and outcomes as they are recorded, for example
+     * to forward them to your own monitoring. JS can read the totals with PayHere.getMetrics().
+     */
+    public PayhereOfficialPackage setMetricsSink(PayHereMetrics.Sink metricsSink) {
+        this.metricsSink = metricsSink;
+        return this;
+    }
+
+    /**
+     * A startPayment call for an order (same order_id, amount and mode) that is already
+     * in progress joins that checkout instead of launching another one, if it comes
+     * within this window of the first call. Both callbacks then receive the same result.
+     * @param windowMs Defaults to 2000, 0 disables de-duplication
+     */
+    public PayhereOfficialPackage setDuplicateWindowMs(long windowMs) {
+        this.duplicateWindowMs = windowMs;
+        return this;
+    }
+
+    @Nullable
+    @Override
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        if (PayhereOfficialModule.NAME.equals(name)) {
+            PayhereOfficialModule module = new PayhereOfficialModule(reactContext, logger);
+            module.setPreloadOnInitialize(preloadOnInitialize);
+            module.setTracingEnabled(tracingEnabled);
+            module.setMetricsSink(metricsSink);
+            module.setDuplicateWindowMs(duplicateWindowMs);
+            return module;
+        }
+        return null;
+    }
+
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        return Arrays.<NativeModule>asList(new PayhereOfficialModule(reactContext));
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return new ReactModuleInfoProvider() {
+            @Override
+            public Map<String, ReactModuleInfo> getReactModuleInfos() {
+                Map<String, ReactModuleInfo> moduleInfos = new HashMap<>();
+                moduleInfos.put(PayhereOfficialModule.NAME, new ReactModuleInfo(
+                        PayhereOfficialModule.NAME,
+                        PayhereOfficialModule.class.getName(),
+                        false, // canOverrideExistingModule
+                        false, // needsEagerInit
+                        false, // hasConstants
+                        false, // isCxxModule
+                        BuildConfig.IS_NEW_ARCHITECTURE_ENABLED // isTurboModule
+                ));
+                return moduleInfos;
+            }
+        };
     }
 
     @Override
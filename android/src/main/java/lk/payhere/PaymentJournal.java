@@ -0,0 +1,468 @@
+package lk.payhere;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only on-disk journal of launched payment sessions, so their outcome
+ * is not lost when Android kills the process while PayHere is showing.
+ *
+ * A session is journaled when its checkout is launched and closed when its
+ * result reaches JS. Sessions a previous process left open are recovered on
+ * load. If their activity result is delivered to the new process, it is
+ * journaled with them, and JS collects both through getPendingResults().
+ *
+ * Records are JSON lines written by a single background thread. It appends
+ * everything queued since its last write and then syncs the file once, so a
+ * burst of records costs one fsync. A torn last line is skipped on load.
+ */
+final class PaymentJournal {
+
+    private static final String TAG = "PaymentJournal";
+
+    private static final class Record{
+        public final static String type = "t";
+        public final static String key = "k";
+        public final static String requestCode = "code";
+        public final static String orderId = "order_id";
+        public final static String mode = "mode";
+        public final static String startedAt = "started";
+        public final static String result = "result";
+
+        public final static String typeStart = "start";
+        public final static String typeEnd = "end";
+        public final static String typeResult = "result";
+
+        private Record(){}
+    }
+
+    /**
+     * A journaled session.
+     */
+    static final class Entry {
+        /** Unique across processes, unlike the request code */
+        final String key;
+        final int requestCode;
+        final String orderId;
+        final int mode;
+        /** Wall clock time of the launch, in milliseconds */
+        final long startedAtMillis;
+        /** Result recovered for the session, or null if none arrived */
+        JsonObject result;
+
+        Entry(String key, int requestCode, String orderId, int mode, long startedAtMillis) {
+            this.key = key;
+            this.requestCode = requestCode;
+            this.orderId = orderId;
+            this.mode = mode;
+            this.startedAtMillis = startedAtMillis;
+        }
+
+        JsonObject toStartRecord() {
+            JsonObject record = new JsonObject();
+            record.addProperty(Record.type, Record.typeStart);
+            record.addProperty(Record.key, key);
+            record.addProperty(Record.requestCode, requestCode);
+            record.addProperty(Record.orderId, orderId);
+            record.addProperty(Record.mode, mode);
+            record.addProperty(Record.startedAt, startedAtMillis);
+            return record;
+        }
+
+        JsonObject toResultRecord() {
+            JsonObject record = new JsonObject();
+            record.addProperty(Record.type, Record.typeResult);
+            record.addProperty(Record.key, key);
+            record.add(Record.result, result);
+            return record;
+        }
+    }
+
+    /** Replaces the journal with the given lines */
+    private static final class Rewrite {
+        final List<String> lines;
+
+        Rewrite(List<String> lines) {
+            this.lines = lines;
+        }
+    }
+
+    /** Queued by stop() */
+    private static final Object STOP = new Object();
+
+    private final File file;
+    private final PayHereLogger logger;
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong nextKey = new AtomicLong();
+
+    /** Guards the fields below */
+    private final Object lock = new Object();
+    private boolean loaded = false;
+    private Thread writer = null;
+    /** Sessions of this process, by key */
+    private final LinkedHashMap<String, Entry> open = new LinkedHashMap<>();
+    /** Sessions left open by previous processes, by key */
+    private final LinkedHashMap<String, Entry> recovered = new LinkedHashMap<>();
+
+    PaymentJournal(File file, PayHereLogger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    /**
+     * Reads the journal left by previous processes, once.
+     * Safe to call from any thread, later calls return right away.
+     * Runs before this process journals anything, so the file is never read while
+     * the writer appends to it, and only holds records of previous processes.
+     */
+    void load() {
+        synchronized (lock){
+            if (loaded){
+                return;
+            }
+            loaded = true;
+
+            this.read();
+
+            // Compact: ended sessions are of no further interest
+            this.enqueue(new Rewrite(this.snapshot()));
+        }
+    }
+
+    /**
+     * Journals a launched session.
+     * @return Key of the session, for {@link #close(String)}
+     */
+    String open(int requestCode, String orderId, int mode) {
+        this.load();
+
+        String key = System.currentTimeMillis() + "-" + nextKey.incrementAndGet();
+        Entry entry = new Entry(key, requestCode, orderId, mode, System.currentTimeMillis());
+
+        synchronized (lock){
+            open.put(key, entry);
+            this.enqueue(entry.toStartRecord().toString());
+        }
+        return key;
+    }
+
+    /**
+     * Marks a session of this process as delivered to JS.
+     */
+    void close(String key) {
+        this.load();
+
+        JsonObject record = new JsonObject();
+        record.addProperty(Record.type, Record.typeEnd);
+        record.addProperty(Record.key, key);
+
+        synchronized (lock){
+            if (open.remove(key) != null){
+                this.enqueue(record.toString());
+            }
+        }
+    }
+
+    /**
+     * @return Whether a session started by a previous process is waiting for a result with this request code
+     */
+    boolean awaitsResult(int requestCode) {
+        this.load();
+
+        synchronized (lock){
+            for (Entry entry : recovered.values()){
+                if (entry.requestCode == requestCode && entry.result == null){
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return Whether any session started by a previous process is still waiting for a result
+     */
+    boolean awaitsAnyResult() {
+        this.load();
+
+        synchronized (lock){
+            for (Entry entry : recovered.values()){
+                if (entry.result == null){
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Journals the result of a session started by a previous process.
+     * @return Whether a recovered session was waiting for a result with this request code
+     */
+    boolean recover(int requestCode, JsonObject result) {
+        this.load();
+
+        synchronized (lock){
+            Entry match = null;
+            for (Entry entry : recovered.values()){
+                // The newest session wins if a request code was reused
+                if (entry.requestCode == requestCode && entry.result == null){
+                    match = entry;
+                }
+            }
+            if (match == null){
+                return false;
+            }
+
+            match.result = result;
+            this.enqueue(match.toResultRecord().toString());
+            return true;
+        }
+    }
+
+    /**
+     * Hands over the sessions recovered from previous processes and forgets them.
+     */
+    List<Entry> takeRecovered() {
+        this.load();
+
+        synchronized (lock){
+            List<Entry> entries = new ArrayList<>(recovered.values());
+            recovered.clear();
+            this.enqueue(new Rewrite(this.snapshot()));
+            return entries;
+        }
+    }
+
+    /**
+     * Blocks until everything journaled so far is on disk.
+     */
+    void flush() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        synchronized (lock){
+            this.enqueue(done);
+        }
+        done.await();
+    }
+
+    /**
+     * Lets the writer thread finish once everything journaled so far is on disk.
+     * Recording again later starts a new one.
+     */
+    void stop() {
+        synchronized (lock){
+            if (writer != null){
+                this.enqueue(STOP);
+            }
+        }
+    }
+
+    /**
+     * Records that recreate the current state. Call with the lock held.
+     */
+    private List<String> snapshot() {
+        List<String> lines = new ArrayList<>();
+        addLines(lines, recovered);
+        addLines(lines, open);
+        return lines;
+    }
+
+    private static void addLines(List<String> lines, LinkedHashMap<String, Entry> entries) {
+        for (Entry entry : entries.values()){
+            lines.add(entry.toStartRecord().toString());
+            if (entry.result != null){
+                lines.add(entry.toResultRecord().toString());
+            }
+        }
+    }
+
+    /** Call with the lock held */
+    private void read() {
+        if (!file.exists()){
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null){
+                try {
+                    this.apply(new JsonParser().parse(line).getAsJsonObject());
+                }
+                catch(RuntimeException e){
+                    logger.warn(TAG + ": skipping unreadable record");
+                }
+            }
+        }
+        catch(IOException e){
+            logger.warn(TAG + ": could not read " + file + ": " + e);
+        }
+        finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private void apply(JsonObject record) {
+        String type = string(record, Record.type);
+        String key = string(record, Record.key);
+        // Sessions of this process are never recovered
+        if (type == null || key == null || open.containsKey(key)){
+            return;
+        }
+
+        if (Record.typeStart.equals(type)){
+            recovered.put(key, new Entry(
+                    key,
+                    record.get(Record.requestCode).getAsInt(),
+                    string(record, Record.orderId),
+                    record.get(Record.mode).getAsInt(),
+                    record.get(Record.startedAt).getAsLong()));
+        }
+        else if (Record.typeEnd.equals(type)){
+            recovered.remove(key);
+        }
+        else if (Record.typeResult.equals(type)){
+            Entry entry = recovered.get(key);
+            JsonElement result = record.get(Record.result);
+            if (entry != null && result != null && result.isJsonObject()){
+                entry.result = result.getAsJsonObject();
+            }
+        }
+    }
+
+    private static String string(JsonObject record, String key) {
+        JsonElement element = record.get(key);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    /** Call with the lock held, so records are queued in the order of the state changes */
+    private void enqueue(Object item) {
+        queue.add(item);
+
+        if (writer == null){
+            writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeLoop();
+                }
+            }, "PayHere-journal");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        while (true){
+            try {
+                batch.add(queue.take());
+            }
+            catch(InterruptedException e){
+                return;
+            }
+            queue.drainTo(batch);
+
+            try {
+                this.write(batch);
+            }
+            catch(IOException e){
+                logger.warn(TAG + ": could not write " + file + ": " + e);
+            }
+
+            boolean stop = false;
+            for (Object item : batch){
+                if (item instanceof CountDownLatch){
+                    ((CountDownLatch) item).countDown();
+                }
+                stop |= item == STOP;
+            }
+            batch.clear();
+
+            if (stop){
+                synchronized (lock){
+                    if (queue.isEmpty()){
+                        writer = null;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a batch in order, then syncs once.
+     */
+    private void write(List<Object> batch) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()){
+            throw new IOException("Could not create " + parent);
+        }
+
+        // Start from the last rewrite of the batch, if any
+        int start = 0;
+        Rewrite rewrite = null;
+        for (int i = batch.size() - 1; i >= 0; i--){
+            if (batch.get(i) instanceof Rewrite){
+                rewrite = (Rewrite) batch.get(i);
+                start = i + 1;
+                break;
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        if (rewrite != null){
+            for (String line : rewrite.lines){
+                text.append(line).append('\n');
+            }
+        }
+        for (Iterator<Object> it = batch.listIterator(start); it.hasNext(); ){
+            Object item = it.next();
+            if (item instanceof String){
+                text.append((String) item).append('\n');
+            }
+        }
+        if (rewrite == null && text.length() == 0){
+            return;
+        }
+
+        File target = rewrite != null ? new File(file.getPath() + ".tmp") : file;
+        FileOutputStream out = new FileOutputStream(target, rewrite == null);
+        try {
+            out.write(text.toString().getBytes("UTF-8"));
+            out.getFD().sync();
+        }
+        finally {
+            out.close();
+        }
+
+        if (rewrite != null && !target.renameTo(file)){
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static void closeQuietly(BufferedReader reader) {
+        if (reader != null){
+            try {
+                reader.close();
+            }
+            catch(IOException ignored){
+            }
+        }
+    }
+}
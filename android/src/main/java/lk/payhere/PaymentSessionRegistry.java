@@ -0,0 +1,192 @@
+package lk.payhere;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.ReadableMap;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks in-flight payments so each activity result reaches the callback of
+ * the startPayment call that launched it.
+ *
+ * Every session gets its own activity request code, which doubles as the
+ * session ID. A session is delivered by removing it from the registry, so a
+ * result can only ever be handed to its callbacks once, and sessions never
+ * block one another.
+ *
+ * A startPayment call for the same order as a session opened shortly before
+ * (e.g. a double tap on Pay) joins that session instead of launching a second
+ * checkout, and receives the same result.
+ */
+final class PaymentSessionRegistry {
+
+    /**
+     * An in-flight payment.
+     */
+    static final class Session {
+        final int id;
+        /** Identifies the order, see PaymentSessionRegistry.fingerprint */
+        final String fingerprint;
+        /** Hands the result to every callback of the session */
+        final Callback callback;
+        /** System.nanoTime() when startPayment opened the session */
+        final long openedAtNanos;
+        /** Key of the session in the PaymentJournal, once its checkout was launched */
+        volatile String journalKey = null;
+
+        /** Guarded by this. The first is the callback of the call that opened the session. */
+        private final ArrayList<Callback> callbacks = new ArrayList<>(1);
+        private boolean delivered = false;
+
+        Session(int id, String fingerprint, Callback callback) {
+            this.id = id;
+            this.fingerprint = fingerprint;
+            this.openedAtNanos = System.nanoTime();
+            this.callbacks.add(callback);
+            this.callback = new Callback() {
+                @Override
+                public void invoke(Object... args) {
+                    deliver(args);
+                }
+            };
+        }
+
+        /**
+         * @return False if the result was already delivered
+         */
+        synchronized boolean join(Callback callback) {
+            if (delivered){
+                return false;
+            }
+            callbacks.add(callback);
+            return true;
+        }
+
+        synchronized int callbackCount() {
+            return callbacks.size();
+        }
+
+        /**
+         * Invokes every callback. A WritableMap can only be sent to JS once,
+         * so the callbacks that joined the session get copies of the result.
+         */
+        private void deliver(Object[] args) {
+            List<Callback> targets;
+            synchronized (this){
+                delivered = true;
+                targets = new ArrayList<>(callbacks);
+                // A session is delivered once, don't keep the JS callbacks alive any longer
+                callbacks.clear();
+            }
+
+            JsonObject copy = null;
+            if (targets.size() > 1 && args.length == 1 && args[0] instanceof ReadableMap){
+                copy = JsonMaps.toJson((ReadableMap) args[0]);
+            }
+
+            for (int i = 0; i < targets.size(); i++){
+                if (i > 0 && copy != null)
+                    targets.get(i).invoke(JsonMaps.toWritableMap(copy));
+                else
+                    targets.get(i).invoke(args);
+            }
+        }
+    }
+
+    private final int firstRequestCode;
+    private final int size;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * @param firstRequestCode First activity request code used for sessions
+     * @param size Number of request codes reserved, i.e. maximum concurrent sessions
+     */
+    PaymentSessionRegistry(int firstRequestCode, int size) {
+        this.firstRequestCode = firstRequestCode;
+        this.size = size;
+    }
+
+    /**
+     * Identifies an order for de-duplication: order ID, amount and payment mode.
+     */
+    static String fingerprint(String orderId, long amountMicros, int mode) {
+        return orderId + '\n' + amountMicros + '\n' + mode;
+    }
+
+    /**
+     * Registers a new session for the callback.
+     * @param fingerprint Identifies the order, or null to never join other calls to this session
+     * @return The session, or null if all request codes are in use
+     */
+    Session open(String fingerprint, Callback callback) {
+        for (int attempt = 0; attempt < size; attempt++){
+            int id = firstRequestCode + (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+            Session session = new Session(id, fingerprint, callback);
+            if (sessions.putIfAbsent(id, session) == null){
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the callback to an in-flight session for the same order.
+     * @param windowNanos How long after it was opened a session can be joined
+     * @return The session joined, or null if there is none
+     */
+    Session join(String fingerprint, Callback callback, long windowNanos) {
+        if (fingerprint == null || windowNanos <= 0){
+            return null;
+        }
+
+        long now = System.nanoTime();
+        for (Session session : sessions.values()){
+            if (fingerprint.equals(session.fingerprint)
+                    && now - session.openedAtNanos <= windowNanos
+                    && session.join(callback)){
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether the request code belongs to the range used for sessions
+     */
+    boolean owns(int requestCode) {
+        return requestCode >= firstRequestCode && requestCode < firstRequestCode + size;
+    }
+
+    /**
+     * Removes the session so its result can be delivered.
+     * Only the first call for a session returns it.
+     * @return The session, or null if it is unknown or was already delivered
+     */
+    Session close(int id) {
+        return sessions.remove(id);
+    }
+
+    /**
+     * Removes every session without delivering it, e.g. when the React instance is torn down.
+     * @return The sessions removed
+     */
+    List<Session> closeAll() {
+        List<Session> closed = new ArrayList<>();
+        for (Integer id : sessions.keySet()){
+            Session session = sessions.remove(id);
+            if (session != null){
+                closed.add(session);
+            }
+        }
+        return closed;
+    }
+
+    int activeCount() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,14 @@
+package lk.payhere;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+/**
+ * New architecture base of {@link PayhereOfficialModule}.
+ * NativePayhereOfficialSpec is generated by codegen from src/NativePayhereOfficial.ts.
+ */
+abstract class PayhereOfficialSpec extends NativePayhereOfficialSpec {
+
+    PayhereOfficialSpec(ReactApplicationContext context) {
+        super(context);
+    }
+}
@@ -0,0 +1,38 @@
+package lk.payhere;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+/**
+ * Old architecture base of {@link PayhereOfficialModule}.
+ * Mirrors the methods of the codegen spec (src/NativePayhereOfficial.ts),
+ * so the module compiles the same way on both architectures.
+ */
+abstract class PayhereOfficialSpec extends ReactContextBaseJavaModule {
+
+    PayhereOfficialSpec(ReactApplicationContext context) {
+        super(context);
+    }
+
+    public abstract void startPayment(ReadableMap payment, Callback callback);
+
+    public abstract void startPaymentJson(String paymentJson, Callback callback);
+
+    public abstract void validatePayment(ReadableMap payment, Promise promise);
+
+    public abstract void validatePayments(ReadableArray payments, Promise promise);
+
+    public abstract void preload(Promise promise);
+
+    public abstract void configure(ReadableMap template, Promise promise);
+
+    public abstract void getPaymentStatus(String orderId, ReadableMap options, Promise promise);
+
+    public abstract void getMetrics(Promise promise);
+
+    public abstract void getPendingResults(Promise promise);
+}
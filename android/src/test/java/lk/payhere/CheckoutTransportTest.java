@@ -0,0 +1,147 @@
+package lk.payhere;
+
+import android.content.Intent;
+import android.os.Parcel;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import lk.payhere.androidsdk.PHConfigs;
+import lk.payhere.androidsdk.PHConstants;
+import lk.payhere.androidsdk.PHMainActivity;
+import lk.payhere.androidsdk.model.InitRequest;
+import lk.payhere.core.PayHereMoney;
+import lk.payhere.core.PaymentKey;
+import lk.payhere.core.PaymentReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the size and marshalling time of the checkout Intent when the request
+ * is Java-serialized into it (the previous transport) and when only a handle is sent.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class CheckoutTransportTest {
+
+    private static final int[] CART_SIZES = {1, 10, 100, 500};
+    private static final int RUNS = 25;
+    private static final int HANDLE = 11010;
+
+    @After
+    public void tearDown() {
+        CheckoutRequests.release(HANDLE);
+    }
+
+    @Test
+    public void handleTransportDoesNotGrowWithTheCart() throws Exception {
+        int firstHandleSize = -1;
+
+        for (int items : CART_SIZES){
+            InitRequest request = PayHereRequests.toInitRequest(PaymentReader.parse(payment(items), null));
+
+            Intent serialized = new Intent(RuntimeEnvironment.getApplication(), PHMainActivity.class);
+            serialized.putExtra(PHConstants.INTENT_EXTRA_DATA, request);
+
+            CheckoutRequests.put(HANDLE, request);
+            Intent handle = PayHereCheckoutActivity.createIntent(RuntimeEnvironment.getApplication(), HANDLE, PHConfigs.SANDBOX_URL);
+
+            int serializedSize = parcelSize(serialized);
+            int handleSize = parcelSize(handle);
+            String sizes = String.format(Locale.US, "%d items: serialized %d bytes, handle %d bytes",
+                    items, serializedSize, handleSize);
+
+            if (firstHandleSize < 0){
+                firstHandleSize = handleSize;
+            }
+            assertEquals(sizes, firstHandleSize, handleSize);
+            assertTrue(sizes, handleSize < serializedSize);
+        }
+    }
+
+    @Test
+    public void handleTransportMarshalsFasterForLargeCarts() throws Exception {
+        int items = CART_SIZES[CART_SIZES.length - 1];
+        InitRequest request = PayHereRequests.toInitRequest(PaymentReader.parse(payment(items), null));
+
+        Intent serialized = new Intent(RuntimeEnvironment.getApplication(), PHMainActivity.class);
+        serialized.putExtra(PHConstants.INTENT_EXTRA_DATA, request);
+
+        CheckoutRequests.put(HANDLE, request);
+        Intent handle = PayHereCheckoutActivity.createIntent(RuntimeEnvironment.getApplication(), HANDLE, PHConfigs.SANDBOX_URL);
+
+        // Warm up both paths before timing them
+        medianMarshalNanos(serialized);
+        medianMarshalNanos(handle);
+
+        long serializedNanos = medianMarshalNanos(serialized);
+        long handleNanos = medianMarshalNanos(handle);
+        assertTrue(String.format(Locale.US, "%d items: serialized median %.1fus, handle median %.1fus",
+                items, serializedNanos / 1e3, handleNanos / 1e3), handleNanos < serializedNanos);
+    }
+
+    private static int parcelSize(Intent intent) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            intent.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        }
+        finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Time to write the Intent into a Parcel, as startActivity does.
+     */
+    private static long medianMarshalNanos(Intent intent) {
+        List<Long> nanos = new ArrayList<>();
+        for (int run = 0; run < RUNS; run++){
+            long start = System.nanoTime();
+            parcelSize(intent);
+            nanos.add(System.nanoTime() - start);
+        }
+        Collections.sort(nanos);
+        return nanos.get(nanos.size() / 2);
+    }
+
+    static HashMap<String, Object> payment(int itemCount) {
+        HashMap<String, Object> payment = new HashMap<>();
+        payment.put(PaymentKey.sandbox, true);
+        payment.put(PaymentKey.merchantId, "1211149");
+        payment.put(PaymentKey.notifyUrl, "http://sample.com/notify");
+        payment.put(PaymentKey.orderId, "Order-1");
+        payment.put(PaymentKey.items, "Hello from React Native!");
+        payment.put(PaymentKey.currency, "LKR");
+        payment.put(PaymentKey.firstName, "Saman");
+        payment.put(PaymentKey.lastName, "Perera");
+        payment.put(PaymentKey.email, "samanp@gmail.com");
+        payment.put(PaymentKey.phone, "0771234567");
+        payment.put(PaymentKey.address, "No.1, Galle Road");
+        payment.put(PaymentKey.city, "Colombo");
+        payment.put(PaymentKey.country, "Sri Lanka");
+
+        long total = 0;
+        for (int i = 1; i <= itemCount; i++){
+            String amount = (100 + i) + ".50";
+            payment.put(PaymentKey.prefixItemNumber + i, "SKU-" + i);
+            payment.put(PaymentKey.prefixItemName + i, "Item " + i);
+            payment.put(PaymentKey.prefixItemQuantity + i, 1.0);
+            payment.put(PaymentKey.prefixItemAmount + i, amount);
+            total += PayHereMoney.parse(amount);
+        }
+        payment.put(PaymentKey.amount, PayHereMoney.format(total, 2));
+        return payment;
+    }
+}
@@ -0,0 +1,92 @@
+package lk.payhere;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+import com.facebook.react.bridge.ActivityEventListener;
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ReactApplicationContext that records activity launches instead of starting them.
+ * Results are then fed back with PayhereOfficialModule.onActivityResult.
+ * Also keeps track of the registered activity event listeners.
+ */
+class FakeReactContext extends ReactApplicationContext {
+
+    static final class Launch {
+        final Intent intent;
+        final int requestCode;
+        /** System.nanoTime() when the activity was launched */
+        final long launchedAtNanos;
+
+        Launch(Intent intent, int requestCode, long launchedAtNanos) {
+            this.intent = intent;
+            this.requestCode = requestCode;
+            this.launchedAtNanos = launchedAtNanos;
+        }
+    }
+
+    private final List<Launch> launches = new ArrayList<>();
+    private final Set<ActivityEventListener> activityEventListeners = new LinkedHashSet<>();
+    private boolean hasActivity = true;
+
+    FakeReactContext(Context base) {
+        super(base);
+    }
+
+    /**
+     * Simulates the app being in the background, where launching fails.
+     */
+    void setHasActivity(boolean hasActivity) {
+        this.hasActivity = hasActivity;
+    }
+
+    List<Launch> getLaunches() {
+        return launches;
+    }
+
+    /**
+     * Forgets the recorded launches, e.g. between rounds of a long test.
+     */
+    void clearLaunches() {
+        launches.clear();
+    }
+
+    Set<ActivityEventListener> getActivityEventListeners() {
+        return activityEventListeners;
+    }
+
+    Launch lastLaunch() {
+        if (launches.isEmpty()){
+            throw new AssertionError("No activity was launched");
+        }
+        return launches.get(launches.size() - 1);
+    }
+
+    @Override
+    public void addActivityEventListener(ActivityEventListener listener) {
+        super.addActivityEventListener(listener);
+        activityEventListeners.add(listener);
+    }
+
+    @Override
+    public void removeActivityEventListener(ActivityEventListener listener) {
+        super.removeActivityEventListener(listener);
+        activityEventListeners.remove(listener);
+    }
+
+    @Override
+    public boolean startActivityForResult(Intent intent, int code, Bundle bundle) {
+        if (!hasActivity){
+            return false;
+        }
+        launches.add(new Launch(intent, code, System.nanoTime()));
+        return true;
+    }
+}
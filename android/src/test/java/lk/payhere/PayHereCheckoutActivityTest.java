@@ -0,0 +1,66 @@
+package lk.payhere;
+
+import android.content.Intent;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import lk.payhere.androidsdk.PHConfigs;
+import lk.payhere.core.PaymentReader;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a sandbox and a live checkout open at the same time each talk to
+ * their own environment whenever they are in the foreground.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PayHereCheckoutActivityTest {
+
+    private static final int SANDBOX_HANDLE = 12010;
+    private static final int LIVE_HANDLE = 12011;
+
+    @After
+    public void tearDown() {
+        CheckoutRequests.release(SANDBOX_HANDLE);
+        CheckoutRequests.release(LIVE_HANDLE);
+    }
+
+    @Test
+    public void checkoutsResumingAlternatelyApplyTheirOwnBaseUrl() throws Exception {
+        ActivityController<PayHereCheckoutActivity> sandbox = checkout(SANDBOX_HANDLE, PHConfigs.SANDBOX_URL);
+        ActivityController<PayHereCheckoutActivity> live = checkout(LIVE_HANDLE, PHConfigs.LIVE_URL);
+
+        sandbox.create().start().resume();
+        assertEquals(PHConfigs.SANDBOX_URL, PHConfigs.getBaseUrl());
+
+        sandbox.pause();
+        live.create().start().resume();
+        assertEquals(PHConfigs.LIVE_URL, PHConfigs.getBaseUrl());
+
+        live.pause();
+        sandbox.resume();
+        assertEquals(PHConfigs.SANDBOX_URL, PHConfigs.getBaseUrl());
+
+        sandbox.pause();
+        live.resume();
+        assertEquals(PHConfigs.LIVE_URL, PHConfigs.getBaseUrl());
+
+        live.pause().stop().destroy();
+        sandbox.resume();
+        assertEquals(PHConfigs.SANDBOX_URL, PHConfigs.getBaseUrl());
+    }
+
+    private static ActivityController<PayHereCheckoutActivity> checkout(int handle, String baseUrl) throws Exception {
+        CheckoutRequests.put(handle, PayHereRequests.toInitRequest(PaymentReader.parse(CheckoutTransportTest.payment(1), null)));
+        Intent intent = PayHereCheckoutActivity.createIntent(RuntimeEnvironment.getApplication(), handle, baseUrl);
+        return Robolectric.buildActivity(PayHereCheckoutActivity.class, intent);
+    }
+}
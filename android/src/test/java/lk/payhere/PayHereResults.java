@@ -0,0 +1,69 @@
+package lk.payhere;
+
+import android.content.Intent;
+
+import java.io.Serializable;
+
+import org.mockito.Mockito;
+
+import lk.payhere.androidsdk.PHConstants;
+import lk.payhere.androidsdk.PHResponse;
+import lk.payhere.androidsdk.model.StatusResponse;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Builds the result Intents that PHMainActivity returns, for injection into onActivityResult.
+ */
+final class PayHereResults {
+
+    private PayHereResults() {}
+
+    /**
+     * A completed payment, as returned with RESULT_OK.
+     * @param responseStatus PHResponse status (e.g. PHResponse.STATUS_SUCCESS)
+     * @param paymentStatus StatusResponse status (e.g. StatusResponse.Status.SUCCESS.value())
+     */
+    static Intent payment(int responseStatus, int paymentStatus, long paymentNo, String message) {
+        return result(new PHResponse<>(responseStatus, message, status(paymentStatus, paymentNo, message)));
+    }
+
+    /**
+     * A response without payment data, as returned for SDK errors.
+     */
+    static Intent error(int responseStatus, String message) {
+        return result(new PHResponse<StatusResponse>(responseStatus, message));
+    }
+
+    static Intent result(PHResponse<StatusResponse> response) {
+        Intent intent = new Intent();
+        intent.putExtra(PHConstants.INTENT_EXTRA_RESULT, response);
+        return intent;
+    }
+
+    /**
+     * An Intent with the result extra present but null.
+     */
+    static Intent nullResult() {
+        Intent intent = new Intent();
+        intent.putExtra(PHConstants.INTENT_EXTRA_RESULT, (Serializable) null);
+        return intent;
+    }
+
+    /**
+     * An Intent without the result extra.
+     */
+    static Intent missingResult() {
+        return new Intent();
+    }
+
+    static StatusResponse status(int paymentStatus, long paymentNo, String message) {
+        StatusResponse status = Mockito.mock(StatusResponse.class, Mockito.withSettings().serializable());
+        when(status.getStatus()).thenReturn(paymentStatus);
+        when(status.getPaymentNo()).thenReturn(paymentNo);
+        when(status.getMessage()).thenReturn(message);
+        when(status.getPrice()).thenReturn(1000.0);
+        when(status.getCurrency()).thenReturn("LKR");
+        return status;
+    }
+}
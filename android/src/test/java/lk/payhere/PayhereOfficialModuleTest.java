@@ -0,0 +1,971 @@
+package lk.payhere;
+
+import android.app.Activity;
+import android.content.Intent;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowTrace;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import lk.payhere.androidsdk.PHConfigs;
+import lk.payhere.androidsdk.PHConstants;
+import lk.payhere.androidsdk.PHResponse;
+import lk.payhere.androidsdk.model.InitPreapprovalRequest;
+import lk.payhere.androidsdk.model.InitRequest;
+import lk.payhere.androidsdk.model.StatusResponse;
+import lk.payhere.core.PayHereError;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives startPayment and onActivityResult with the results PHMainActivity can return,
+ * pinning down what JS receives for each of them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PayhereOfficialModuleTest {
+
+    private static final int PAYMENT_SUCCESS = StatusResponse.Status.SUCCESS.value();
+    private static final int PAYMENT_HOLD = StatusResponse.Status.HOLD.value();
+    private static final int PAYMENT_FAILED = StatusResponse.Status.FAILED.value();
+
+    /** Bound on launch to callback, well above the few hundred microseconds it takes */
+    private static final long MAX_ROUND_TRIP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private MockedStatic<Arguments> arguments;
+    private FakeReactContext context;
+    private PayhereOfficialModule module;
+
+    @Before
+    public void setUp() {
+        /*
+         * Arguments.createMap() needs the native bridge. Use the Java-only maps instead.
+         * Stub only: recorded invocations would pile up in the heap retention test.
+         */
+        arguments = Mockito.mockStatic(Arguments.class, Mockito.withSettings().stubOnly().defaultAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                switch (invocation.getMethod().getName()){
+                    case "createMap":
+                        return new JavaOnlyMap();
+                    case "createArray":
+                        return new JavaOnlyArray();
+                    default:
+                        return invocation.callRealMethod();
+                }
+            }
+        }));
+
+        context = new FakeReactContext(RuntimeEnvironment.getApplication());
+        module = new PayhereOfficialModule(context, new PayHereLogger(PayHereLogger.NONE, PayHereLogger.LOGCAT));
+    }
+
+    @After
+    public void tearDown() {
+        arguments.close();
+    }
+
+    /* MARK: Launch */
+
+    @Test
+    public void startPaymentLaunchesPayHereWithTheRequest() {
+        RecordingCallback callback = new RecordingCallback();
+        module.startPayment(onetimePayment(), callback);
+
+        FakeReactContext.Launch launch = context.lastLaunch();
+        assertEquals(PayHereCheckoutActivity.class.getName(), launch.intent.getComponent().getClassName());
+        assertFalse(launch.intent.hasExtra(PHConstants.INTENT_EXTRA_DATA));
+
+        int handle = launch.intent.getIntExtra(CheckoutRequests.EXTRA_HANDLE, -1);
+        assertEquals(launch.requestCode, handle);
+
+        InitRequest request = (InitRequest) CheckoutRequests.get(handle);
+        assertEquals("1211149", request.getMerchantId());
+        assertEquals("Order-1", request.getOrderId());
+        assertEquals("LKR", request.getCurrency());
+        assertEquals(1000.0, request.getAmount(), 0);
+        assertEquals(0, callback.invocationCount());
+    }
+
+    @Test
+    public void eachCheckoutCarriesItsOwnEnvironment() {
+        module.startPayment(onetimePayment(), new RecordingCallback());
+        Intent sandbox = context.lastLaunch().intent;
+
+        JavaOnlyMap live = onetimePayment();
+        live.putBoolean("sandbox", false);
+        live.putString("order_id", "Order-2");
+        module.startPayment(live, new RecordingCallback());
+
+        assertEquals(PHConfigs.SANDBOX_URL, sandbox.getStringExtra(PayHereCheckoutActivity.EXTRA_BASE_URL));
+        assertEquals(PHConfigs.LIVE_URL, context.lastLaunch().intent.getStringExtra(PayHereCheckoutActivity.EXTRA_BASE_URL));
+    }
+
+    @Test
+    public void resultReleasesTheRequest() {
+        RecordingCallback callback = new RecordingCallback();
+        module.startPayment(onetimePayment(), callback);
+        int requestCode = context.lastLaunch().requestCode;
+
+        module.onActivityResult(null, requestCode, Activity.RESULT_CANCELED, null);
+
+        assertDismissed(callback.result());
+        assertNull(CheckoutRequests.get(requestCode));
+    }
+
+    @Test
+    public void failedLaunchReleasesTheRequest() {
+        context.setHasActivity(false);
+        int before = CheckoutRequests.size();
+
+        module.startPayment(onetimePayment(), new RecordingCallback());
+
+        assertEquals(before, CheckoutRequests.size());
+    }
+
+    @Test
+    public void invalidPaymentFailsWithoutLaunching() {
+        JavaOnlyMap payment = onetimePayment();
+        payment.putNull("merchant_id");
+
+        RecordingCallback callback = new RecordingCallback();
+        module.startPayment(payment, callback);
+
+        assertTrue(context.getLaunches().isEmpty());
+        assertError(callback.result(), PayHereError.CODE_VALIDATION);
+    }
+
+    @Test
+    public void amountBeyondCurrencyScaleFailsWithoutLaunching() {
+        JavaOnlyMap payment = onetimePayment();
+        payment.putString("amount", "1000.005");
+
+        RecordingCallback callback = new RecordingCallback();
+        module.startPayment(payment, callback);
+
+        assertTrue(context.getLaunches().isEmpty());
+        assertError(callback.result(), PayHereError.CODE_VALIDATION);
+    }
+
+    @Test
+    public void missingActivityFailsWithUnknownError() {
+        context.setHasActivity(false);
+
+        RecordingCallback callback = new RecordingCallback();
+        module.startPayment(onetimePayment(), callback);
+
+        assertError(callback.result(), PayHereError.CODE_UNKNOWN);
+    }
+
+    @Test
+    public void startPaymentJsonLaunchesPreapprovalWithItems() {
+        String json = "{\"items\": [{\"id\": \"A-1\", \"name\": \"Box\", \"quantity\": 2, \"amount\": \"5.00\"}],"
+                + " \"sandbox\": true, \"merchant_id\": \"1211149\", \"notify_url\": \"http://sample.com/notify\","
+                + " \"order_id\": \"Order-1\", \"currency\": \"LKR\", \"first_name\": \"Saman\", \"last_name\": \"Perera\","
+                + " \"email\": \"samanp@gmail.com\", \"phone\": \"0771234567\", \"address\": \"No.1, Galle Road\","
+                + " \"city\": \"Colombo\", \"country\": \"Sri Lanka\", \"preapprove\": true}";
+
+        RecordingCallback callback = new RecordingCallback();
+        module.startPaymentJson(json, callback);
+
+        int handle = context.lastLaunch().intent.getIntExtra(CheckoutRequests.EXTRA_HANDLE, -1);
+        InitPreapprovalRequest request = (InitPreapprovalRequest) CheckoutRequests.get(handle);
+        assertEquals("Order-1", request.getOrderId());
+        assertEquals(1, request.getItems().size());
+        assertEquals("A-1", request.getItems().get(0).getId());
+        assertEquals(0, callback.invocationCount());
+    }
+
+    @Test
+    public void preapprovalWithoutAmountSendsZero() {
+        JavaOnlyMap payment = onetimePayment();
+        payment.putBoolean("preapprove", true);
+        payment.remove("amount");
+
+        RecordingCallback callback = new RecordingCallback();
+        module.startPayment(payment, callback);
+
+        int handle = context.lastLaunch().intent.getIntExtra(CheckoutRequests.EXTRA_HANDLE, -1);
+        InitPreapprovalRequest request = (InitPreapprovalRequest) CheckoutRequests.get(handle);
+        assertEquals(0.0, request.getAmount(), 0);
+        assertEquals(0, callback.invocationCount());
+    }
+
+    @Test
+    public void malformedPaymentJsonFailsWithoutLaunching() {
+        RecordingCallback callback = new RecordingCallback();
+        module.startPaymentJson("{\"merchant_id\": ", callback);
+
+        assertTrue(context.getLaunches().isEmpty());
+        assertError(callback.result(), PayHereError.CODE_VALIDATION);
+    }
+
+    @Test
+    public void configureAcceptsNumbersForStringFields() {
+        JavaOnlyMap template = JavaOnlyMap.of("merchant_id", 1211149.0);
+        Promise promise = Mockito.mock(Promise.class);
+        module.configure(template, promise);
+        Mockito.verify(promise).resolve(null);
+
+        JavaOnlyMap payment = onetimePayment();
+        payment.remove("merchant_id");
+        module.startPayment(payment, new RecordingCallback());
+
+        InitRequest request = (InitRequest) CheckoutRequests.get(context.lastLaunch().requestCode);
+        assertEquals("1211149", request.getMerchantId());
+    }
+
+    /* MARK: Validation */
+
+    @Test
+    public void validatePaymentWarnsWhenItemsDoNotAddUp() {
+        JavaOnlyMap payment = onetimePayment();
+        payment.putString("item_name_1", "Shirt");
+        payment.putDouble("quantity_1", 2);
+        payment.putString("amount_1", "450.00");
+
+        ReadableMap result = validation(payment);
+        assertTrue(result.getBoolean("valid"));
+        assertEquals(0, result.getArray("errors").size());
+        assertEquals(1, result.getArray("warnings").size());
+        assertEquals("Item total 900.00 differs from amount 1000.00", result.getArray("warnings").getString(0));
+
+        payment.putString("amount_1", "500.00");
+        assertEquals(0, validation(payment).getArray("warnings").size());
+    }
+
+    @Test
+    public void validatePaymentCollectsEveryError() {
+        JavaOnlyMap payment = onetimePayment();
+        payment.remove("merchant_id");
+        payment.remove("email");
+        payment.putString("amount", "abc");
+
+        ReadableMap result = validation(payment);
+        assertFalse(result.getBoolean("valid"));
+
+        ReadableArray errors = result.getArray("errors");
+        assertEquals(3, errors.size());
+        String all = errors.toArrayList().toString();
+        assertTrue(all, all.contains("merchant_id"));
+        assertTrue(all, all.contains("email"));
+        assertTrue(all, all.contains("amount"));
+    }
+
+    @Test
+    public void validatePaymentReportsTheFailingItem() {
+        JavaOnlyMap payment = onetimePayment();
+        payment.putArray("items", JavaOnlyArray.of(
+                JavaOnlyMap.of("name", "Shirt", "quantity", 1.0, "amount", 500.0),
+                JavaOnlyMap.of("quantity", 1.0, "amount", 500.0)));
+
+        ReadableMap result = validation(payment);
+        assertFalse(result.getBoolean("valid"));
+        assertEquals(1, result.getArray("errors").size());
+        assertTrue(result.getArray("errors").getString(0), result.getArray("errors").getString(0).contains("items[1].name"));
+    }
+
+    @Test
+    public void validatePaymentsKeepsThePaymentOrder() {
+        // More payments than background threads, so they are validated out of order
+        final int count = 24;
+        JavaOnlyArray payments = new JavaOnlyArray();
+        for (int i = 0; i < count; i++){
+            if (i % 6 == 5){
+                payments.pushString("Order-" + i);
+                continue;
+            }
+            JavaOnlyMap payment = onetimePayment();
+            payment.putString("order_id", "Order-" + i);
+            payment.putString("item_name_1", "Item " + i);
+            payment.putDouble("quantity_1", 1);
+            payment.putString("amount_1", (i + 1) + ".00");
+            if (i % 3 == 0){
+                payment.remove("merchant_id");
+            }
+            payments.pushMap(payment);
+        }
+
+        Promise promise = Mockito.mock(Promise.class);
+        module.validatePayments(payments, promise);
+
+        ArgumentCaptor<Object> value = ArgumentCaptor.forClass(Object.class);
+        Mockito.verify(promise, Mockito.timeout(5000)).resolve(value.capture());
+        ReadableArray results = (ReadableArray) value.getValue();
+
+        assertEquals(count, results.size());
+        for (int i = 0; i < count; i++){
+            ReadableMap result = results.getMap(i);
+            if (i % 6 == 5){
+                assertFalse(result.getBoolean("valid"));
+                assertEquals("Payment at index " + i + " is not an object", result.getArray("errors").getString(0));
+                continue;
+            }
+            assertEquals("Payment " + i, i % 3 != 0, result.getBoolean("valid"));
+            assertEquals("Payment " + i, i % 3 == 0 ? 1 : 0, result.getArray("errors").size());
+            if (i % 3 != 0){
+                assertEquals("Item total " + (i + 1) + ".00 differs from amount 1000.00", result.getArray("warnings").getString(0));
+            }
+        }
+    }
+
+    @Test
+    public void validatePaymentsResolvesEmptyArray() {
+        Promise promise = Mockito.mock(Promise.class);
+        module.validatePayments(new JavaOnlyArray(), promise);
+
+        ArgumentCaptor<Object> value = ArgumentCaptor.forClass(Object.class);
+        Mockito.verify(promise).resolve(value.capture());
+        assertEquals(0, ((ReadableArray) value.getValue()).size());
+    }
+
+    /* MARK: RESULT_OK */
+
+    @Test
+    public void successfulPaymentCompletesWithPaymentNo() {
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 320025071278L, "Payment success"));
+
+        assertTrue(result.getBoolean("success"));
+        assertEquals("complete", result.getString("jscallback"));
+        assertEquals("320025071278", result.getString("jsdata"));
+
+        ReadableMap payment = result.getMap("jspayment");
+        assertEquals("320025071278", payment.getString("paymentNo"));
+        assertEquals(PAYMENT_SUCCESS, payment.getInt("status"));
+        assertEquals("SUCCESS", payment.getString("statusName"));
+        assertEquals(1000.0, payment.getDouble("amount"), 0);
+        assertEquals("LKR", payment.getString("currency"));
+        assertEquals("Payment success", payment.getString("message"));
+    }
+
+    @Test
+    public void heldPaymentCompletesWithPaymentNo() {
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_HOLD, 42L, "Payment on hold"));
+
+        assertTrue(result.getBoolean("success"));
+        assertEquals("complete", result.getString("jscallback"));
+        assertEquals("42", result.getString("jsdata"));
+        assertEquals("HOLD", result.getMap("jspayment").getString("statusName"));
+    }
+
+    @Test
+    public void failedPaymentIsDeclined() {
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_FAILED, 42L, "Card declined"));
+
+        ReadableMap error = assertError(result, PayHereError.CODE_PAYMENT_DECLINED);
+        assertEquals("Card declined", result.getString("jsdata"));
+        assertEquals(PHResponse.STATUS_SUCCESS, error.getInt("status"));
+        assertEquals(PAYMENT_FAILED, error.getInt("paymentStatus"));
+    }
+
+    @Test
+    public void paymentErrorIsDeclined() {
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_ERROR_PAYMENT, PAYMENT_FAILED, 42L, "Insufficient funds"));
+
+        assertError(result, PayHereError.CODE_PAYMENT_DECLINED);
+        assertEquals("Insufficient funds", result.getString("jsdata"));
+    }
+
+    @Test
+    public void successWithoutDataIsUnknownError() {
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.error(PHResponse.STATUS_SUCCESS, "Payment success"));
+
+        ReadableMap error = assertError(result, PayHereError.CODE_UNKNOWN);
+        assertEquals("Internal Error. Could not map success response.", result.getString("jsdata"));
+        assertFalse(error.hasKey("paymentStatus"));
+    }
+
+    @Test
+    public void networkError() {
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.error(PHResponse.STATUS_ERROR_NETWORK, null));
+
+        ReadableMap error = assertError(result, PayHereError.CODE_NETWORK);
+        assertEquals("Network Error", result.getString("jsdata"));
+        assertEquals(PHResponse.STATUS_ERROR_NETWORK, error.getInt("status"));
+    }
+
+    @Test
+    public void validationError() {
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.error(PHResponse.STATUS_ERROR_VALIDATION, null));
+
+        assertError(result, PayHereError.CODE_VALIDATION);
+        assertEquals("Parameter Validation Error", result.getString("jsdata"));
+    }
+
+    @Test
+    public void dataError() {
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.error(PHResponse.STATUS_ERROR_DATA, null));
+
+        assertError(result, PayHereError.CODE_INTENT_DATA);
+        assertEquals("Intent Data not Present", result.getString("jsdata"));
+    }
+
+    @Test
+    public void unknownErrorKeepsMessage() {
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.error(PHResponse.STATUS_ERROR_UNKNOWN, "Server unreachable"));
+
+        assertError(result, PayHereError.CODE_UNKNOWN);
+        assertEquals("Server unreachable", result.getString("jsdata"));
+    }
+
+    @Test
+    public void nullResponseIsDismissed() {
+        assertDismissed(pay(Activity.RESULT_OK, PayHereResults.nullResult()));
+    }
+
+    /* MARK: RESULT_CANCELED */
+
+    @Test
+    public void canceledResponseIsDismissed() {
+        assertDismissed(pay(Activity.RESULT_CANCELED, PayHereResults.error(PHResponse.STATUS_ERROR_CANCELED, "Canceled")));
+    }
+
+    @Test
+    public void canceledWithErrorReportsError() {
+        ReadableMap result = pay(Activity.RESULT_CANCELED, PayHereResults.error(PHResponse.STATUS_ERROR_NETWORK, null));
+
+        assertError(result, PayHereError.CODE_NETWORK);
+    }
+
+    @Test
+    public void canceledWithoutResponseIsDismissed() {
+        assertDismissed(pay(Activity.RESULT_CANCELED, PayHereResults.nullResult()));
+    }
+
+    /* MARK: Intent data */
+
+    @Test
+    public void noIntentIsDismissed() {
+        assertDismissed(pay(Activity.RESULT_CANCELED, null));
+    }
+
+    @Test
+    public void intentWithoutResultIsIntentDataError() {
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.missingResult());
+
+        assertError(result, PayHereError.CODE_INTENT_DATA);
+        assertEquals("Result not present in activity result", result.getString("jsdata"));
+    }
+
+    /* MARK: Sessions */
+
+    @Test
+    public void resultIsDeliveredOnce() {
+        RecordingCallback callback = new RecordingCallback();
+        module.startPayment(onetimePayment(), callback);
+        int requestCode = context.lastLaunch().requestCode;
+
+        Intent data = PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 1L, null);
+        module.onActivityResult(null, requestCode, Activity.RESULT_OK, data);
+        module.onActivityResult(null, requestCode, Activity.RESULT_OK, data);
+
+        assertEquals(1, callback.invocationCount());
+    }
+
+    @Test
+    public void unrelatedResultIsIgnored() {
+        RecordingCallback callback = new RecordingCallback();
+        module.startPayment(onetimePayment(), callback);
+
+        module.onActivityResult(null, 1, Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 1L, null));
+
+        assertEquals(0, callback.invocationCount());
+    }
+
+    @Test
+    public void concurrentPaymentsAreRoutedToTheirCallbacks() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        module.startPayment(onetimePayment(), first);
+        int firstCode = context.lastLaunch().requestCode;
+        JavaOnlyMap otherOrder = onetimePayment();
+        otherOrder.putString("order_id", "Order-2");
+        module.startPayment(otherOrder, second);
+        int secondCode = context.lastLaunch().requestCode;
+        assertNotEquals(firstCode, secondCode);
+
+        module.onActivityResult(null, secondCode, Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 2L, null));
+        module.onActivityResult(null, firstCode, Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 1L, null));
+
+        assertEquals("1", first.result().getString("jsdata"));
+        assertEquals("2", second.result().getString("jsdata"));
+    }
+
+    /* MARK: De-duplication */
+
+    @Test
+    public void repeatedOrderJoinsTheRunningCheckout() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        module.startPayment(onetimePayment(), first);
+        module.startPayment(onetimePayment(), second);
+
+        assertEquals(1, context.getLaunches().size());
+        module.onActivityResult(null, context.lastLaunch().requestCode, Activity.RESULT_OK,
+                PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 7L, null));
+
+        assertEquals("7", first.result().getString("jsdata"));
+        assertEquals("7", second.result().getString("jsdata"));
+        assertEquals("SUCCESS", second.result().getMap("jspayment").getString("statusName"));
+        assertEquals(1, second.invocationCount());
+    }
+
+    @Test
+    public void differentAmountIsNotADuplicate() {
+        module.startPayment(onetimePayment(), new RecordingCallback());
+        JavaOnlyMap changed = onetimePayment();
+        changed.putString("amount", "1500.00");
+        module.startPayment(changed, new RecordingCallback());
+
+        assertEquals(2, context.getLaunches().size());
+    }
+
+    @Test
+    public void zeroWindowDisablesDeduplication() {
+        module.setDuplicateWindowMs(0);
+        module.startPayment(onetimePayment(), new RecordingCallback());
+        module.startPayment(onetimePayment(), new RecordingCallback());
+
+        assertEquals(2, context.getLaunches().size());
+    }
+
+    @Test
+    public void finishedOrderCanBePaidAgain() {
+        pay(Activity.RESULT_CANCELED, null);
+        module.startPayment(onetimePayment(), new RecordingCallback());
+
+        assertEquals(2, context.getLaunches().size());
+    }
+
+    /* MARK: Tracing */
+
+    @Test
+    public void tracingEmitsBalancedSectionsForEachPhase() {
+        module.setTracingEnabled(true);
+
+        ReadableMap result = pay(Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 1L, null));
+
+        assertEquals("complete", result.getString("jscallback"));
+        assertTrue(ShadowTrace.getCurrentSections().isEmpty());
+        assertTrue(ShadowTrace.getPreviousSections().containsAll(Arrays.asList(
+                PayHereTracer.START_PAYMENT,
+                PayHereTracer.PARSE,
+                PayHereTracer.BUILD_INTENT,
+                PayHereTracer.START_ACTIVITY,
+                PayHereTracer.RESULT,
+                PayHereTracer.DECODE_RESULT,
+                PayHereTracer.SEND_RESULT)));
+    }
+
+    @Test
+    public void tracingIsOffByDefault() {
+        pay(Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 1L, null));
+
+        assertTrue(ShadowTrace.getPreviousSections().isEmpty());
+    }
+
+    /* MARK: Metrics */
+
+    @Test
+    public void metricsCountOutcomesByStatus() {
+        final List<String> outcomes = new ArrayList<>();
+        module.setMetricsSink(new PayHereMetrics.Sink() {
+            @Override
+            public void onLatency(String metric, long durationNanos) {}
+
+            @Override
+            public void onOutcome(String outcome, int status) {
+                outcomes.add(outcome + ":" + status);
+            }
+        });
+
+        pay(Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 1L, null));
+        pay(Activity.RESULT_OK, PayHereResults.error(PHResponse.STATUS_ERROR_NETWORK, null));
+        pay(Activity.RESULT_OK, PayHereResults.error(PHResponse.STATUS_ERROR_NETWORK, null));
+        pay(Activity.RESULT_CANCELED, PayHereResults.error(PHResponse.STATUS_ERROR_CANCELED, "Canceled"));
+        pay(Activity.RESULT_CANCELED, null);
+
+        ReadableMap metrics = metrics();
+        assertEquals(1, metrics.getMap("completed").getInt("count"));
+        assertEquals(1, metrics.getMap("completed").getMap("byStatus").getInt(String.valueOf(PHResponse.STATUS_SUCCESS)));
+        assertEquals(2, metrics.getMap("error").getMap("byStatus").getInt(String.valueOf(PHResponse.STATUS_ERROR_NETWORK)));
+        assertEquals(2, metrics.getMap("dismissed").getInt("count"));
+        assertEquals(1, metrics.getMap("dismissed").getMap("byStatus").getInt("none"));
+        assertEquals(5, outcomes.size());
+        assertEquals("completed:" + PHResponse.STATUS_SUCCESS, outcomes.get(0));
+    }
+
+    @Test
+    public void metricsRecordPhaseLatencies() {
+        pay(Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 1L, null));
+
+        JavaOnlyMap invalid = onetimePayment();
+        invalid.putNull("merchant_id");
+        module.startPayment(invalid, new RecordingCallback());
+
+        ReadableMap metrics = metrics();
+        assertEquals(2, metrics.getMap("parse").getInt("count"));
+        assertEquals(1, metrics.getMap("launch").getInt("count"));
+        assertEquals(2, metrics.getMap("timeToResult").getInt("count"));
+        assertEquals(1, metrics.getMap("error").getMap("byStatus").getInt("none"));
+        assertTrue(metrics.getMap("timeToResult").getArray("buckets").size() > 0);
+    }
+
+    /* MARK: Logging */
+
+    @Test
+    public void loggingRedactsCustomerDetailsAtEveryLevel() {
+        int[] levels = {PayHereLogger.VERBOSE, PayHereLogger.DEBUG, PayHereLogger.INFO,
+                PayHereLogger.WARN, PayHereLogger.ERROR, PayHereLogger.NONE};
+
+        for (int level : levels){
+            RecordingSink sink = new RecordingSink();
+            List<String> piiValues = logPayments(new PayHereLogger(level, sink));
+
+            for (String message : sink.messages){
+                for (String value : piiValues){
+                    assertFalse("Level " + level + " logged '" + value + "' in: " + message, message.contains(value));
+                }
+            }
+
+            if (level <= PayHereLogger.DEBUG){
+                String description = sink.find("Payment{");
+                assertTrue("Level " + level + " did not describe the payment", description != null);
+                for (String key : new String[]{"first_name", "last_name", "email", "phone", "address", "city", "country",
+                        "delivery_address", "delivery_city", "delivery_country"}){
+                    assertTrue(description, description.contains(key + "=<redacted>"));
+                }
+                assertTrue(description, description.contains("order_id=Order-1"));
+            }
+            else{
+                assertNull(sink.find("Payment{"));
+            }
+        }
+    }
+
+    @Test
+    public void loggingShowsCustomerDetailsWhenRedactionIsOff() {
+        RecordingSink sink = new RecordingSink();
+        logPayments(new PayHereLogger(PayHereLogger.DEBUG, sink, false));
+
+        String description = sink.find("Payment{");
+        assertTrue(description != null);
+        assertTrue(description, description.contains("email=samanp@gmail.com"));
+        assertTrue(description, description.contains("delivery_city=Kandy"));
+    }
+
+    /**
+     * Starts and completes a payment, and starts one from JSON, on a module logging to the given logger.
+     * @return The customer details of the payments
+     */
+    private List<String> logPayments(PayHereLogger logger) {
+        PayhereOfficialModule logging = new PayhereOfficialModule(context, logger);
+        JavaOnlyMap payment = onetimePayment();
+        payment.putString("delivery_address", "No.2, Kandy Road");
+        payment.putString("delivery_city", "Kandy");
+        payment.putString("delivery_country", "Sri Lanka");
+
+        logging.startPayment(payment, new RecordingCallback());
+        logging.onActivityResult(null, context.lastLaunch().requestCode, Activity.RESULT_OK,
+                PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 320025071278L, "Payment success"));
+
+        logging.startPaymentJson("{\"sandbox\": true, \"merchant_id\": \"1211149\", \"notify_url\": \"http://sample.com/notify\","
+                + " \"order_id\": \"Order-2\", \"items\": \"Shirt\", \"amount\": \"1000.00\", \"currency\": \"LKR\","
+                + " \"first_name\": \"Saman\", \"last_name\": \"Perera\", \"email\": \"samanp@gmail.com\","
+                + " \"phone\": \"0771234567\", \"address\": \"No.1, Galle Road\", \"city\": \"Colombo\","
+                + " \"country\": \"Sri Lanka\"}", new RecordingCallback());
+        logging.invalidate();
+
+        return Arrays.asList("Saman", "Perera", "samanp@gmail.com", "0771234567", "No.1, Galle Road",
+                "Colombo", "Sri Lanka", "No.2, Kandy Road", "Kandy");
+    }
+
+    /* MARK: Process death */
+
+    @Test
+    public void resultAfterProcessDeathIsKeptForGetPendingResults() throws Exception {
+        module.startPayment(onetimePayment(), new RecordingCallback());
+        int requestCode = context.lastLaunch().requestCode;
+        module.journal().flush();
+
+        // The restarted process has a new module, with no sessions, over the same files
+        PayhereOfficialModule restarted = new PayhereOfficialModule(context, new PayHereLogger(PayHereLogger.NONE, PayHereLogger.LOGCAT));
+        restarted.onActivityResult(null, requestCode, Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 320025071278L, null));
+
+        ReadableArray pending = pendingResults(restarted);
+        assertEquals(1, pending.size());
+        ReadableMap entry = pending.getMap(0);
+        assertEquals("Order-1", entry.getString("orderId"));
+        assertEquals("onetime", entry.getString("mode"));
+        assertTrue(entry.getMap("result").getBoolean("success"));
+        assertEquals("320025071278", entry.getMap("result").getString("jsdata"));
+
+        assertEquals(0, pendingResults(restarted).size());
+    }
+
+    @Test
+    public void deliveredPaymentsAreNotPending() throws Exception {
+        pay(Activity.RESULT_OK, PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, 1L, null));
+        module.journal().flush();
+
+        PayhereOfficialModule restarted = new PayhereOfficialModule(context, new PayHereLogger(PayHereLogger.NONE, PayHereLogger.LOGCAT));
+        assertEquals(0, pendingResults(restarted).size());
+    }
+
+    @Test
+    public void ownSessionsAreNotRecovered() throws Exception {
+        module.startPayment(onetimePayment(), new RecordingCallback());
+        module.journal().flush();
+
+        assertFalse(module.journal().awaitsAnyResult());
+        assertEquals(0, pendingResults(module).size());
+    }
+
+    /* MARK: Lifecycle */
+
+    @Test
+    public void listensForResultsOnlyWhilePaymentsAreInProgress() {
+        assertTrue(context.getActivityEventListeners().isEmpty());
+
+        module.startPayment(onetimePayment(), new RecordingCallback());
+        int first = context.lastLaunch().requestCode;
+        JavaOnlyMap other = onetimePayment();
+        other.putString("order_id", "Order-2");
+        module.startPayment(other, new RecordingCallback());
+        int second = context.lastLaunch().requestCode;
+        assertEquals(Collections.singleton(module), context.getActivityEventListeners());
+
+        module.onActivityResult(null, first, Activity.RESULT_CANCELED, null);
+        assertEquals(1, context.getActivityEventListeners().size());
+
+        module.onActivityResult(null, second, Activity.RESULT_CANCELED, null);
+        assertTrue(context.getActivityEventListeners().isEmpty());
+    }
+
+    @Test
+    public void failedLaunchStopsListening() {
+        context.setHasActivity(false);
+        module.startPayment(onetimePayment(), new RecordingCallback());
+
+        assertTrue(context.getActivityEventListeners().isEmpty());
+    }
+
+    @Test
+    public void invalidateDropsSessionsWithoutCallingBack() throws Exception {
+        int requestsBefore = CheckoutRequests.size();
+        RecordingCallback callback = new RecordingCallback();
+        module.startPayment(onetimePayment(), callback);
+        int requestCode = context.lastLaunch().requestCode;
+
+        module.invalidate();
+
+        assertTrue(context.getActivityEventListeners().isEmpty());
+        assertEquals(requestsBefore, CheckoutRequests.size());
+        module.onActivityResult(null, requestCode, Activity.RESULT_CANCELED, null);
+        assertEquals(0, callback.invocationCount());
+
+        // The checkout is left in the journal for the next instance
+        module.journal().flush();
+        PayhereOfficialModule reloaded = new PayhereOfficialModule(context, new PayHereLogger(PayHereLogger.NONE, PayHereLogger.LOGCAT));
+        assertEquals(1, pendingResults(reloaded).size());
+    }
+
+    /**
+     * Runs many payments whose callbacks each hold on to a sizable closure, as JS
+     * callbacks do, and checks that none of the callbacks is retained afterwards.
+     */
+    @Test
+    public void completedPaymentsRetainNothing() throws Exception {
+        final int payments = 500;
+        int requestsBefore = CheckoutRequests.size();
+        List<WeakReference<Callback>> callbacks = new ArrayList<>();
+
+        for (int i = 0; i < payments; i++){
+            Callback callback = new ClosureCallback(16 * 1024);
+            if (i % 10 == 0){
+                callbacks.add(new WeakReference<>(callback));
+            }
+
+            JavaOnlyMap payment = onetimePayment();
+            payment.putString("order_id", "Order-" + i);
+            module.startPayment(payment, callback);
+            module.onActivityResult(null, context.lastLaunch().requestCode, Activity.RESULT_OK,
+                    PayHereResults.payment(PHResponse.STATUS_SUCCESS, PAYMENT_SUCCESS, i, null));
+            context.clearLaunches();
+        }
+        module.journal().flush();
+
+        for (WeakReference<Callback> callback : callbacks){
+            assertTrue("Callback still reachable", collected(callback));
+        }
+        assertEquals(requestsBefore, CheckoutRequests.size());
+        assertTrue(context.getActivityEventListeners().isEmpty());
+    }
+
+    /* MARK: Helpers */
+
+    /**
+     * Logger sink keeping every message.
+     */
+    private static final class RecordingSink implements PayHereLogger.Sink {
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public synchronized void log(int level, String tag, String message) {
+            messages.add(message);
+        }
+
+        /**
+         * @return The first message containing the text, or null
+         */
+        synchronized String find(String text) {
+            for (String message : messages){
+                if (message.contains(text)){
+                    return message;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Callback holding on to memory, like a JS callback capturing its closure.
+     */
+    private static final class ClosureCallback implements Callback {
+        private final byte[] closure;
+
+        ClosureCallback(int bytes) {
+            this.closure = new byte[bytes];
+        }
+
+        @Override
+        public void invoke(Object... args) {
+            closure[0]++;
+        }
+    }
+
+    /**
+     * Whether the referent is collected, asking for garbage collection a few times.
+     */
+    private static boolean collected(WeakReference<?> reference) throws InterruptedException {
+        for (int i = 0; i < 10 && reference.get() != null; i++){
+            System.gc();
+            Thread.sleep(10);
+        }
+        return reference.get() == null;
+    }
+
+    private static JavaOnlyMap onetimePayment() {
+        return JavaOnlyMap.of(
+                "sandbox", true,
+                "merchant_id", "1211149",
+                "notify_url", "http://sample.com/notify",
+                "order_id", "Order-1",
+                "items", "Hello from React Native!",
+                "amount", "1000.00",
+                "currency", "LKR",
+                "first_name", "Saman",
+                "last_name", "Perera",
+                "email", "samanp@gmail.com",
+                "phone", "0771234567",
+                "address", "No.1, Galle Road",
+                "city", "Colombo",
+                "country", "Sri Lanka");
+    }
+
+    /**
+     * Starts a one-time payment, returns the given result to the module and checks the
+     * round trip: launch to callback is measured, and recorded once in timeToResult.
+     * @return What JS received
+     */
+    private ReadableMap pay(int resultCode, Intent data) {
+        int recordedBefore = metrics().getMap(PayHereMetrics.TIME_TO_RESULT).getInt("count");
+        RecordingCallback callback = new RecordingCallback();
+        module.startPayment(onetimePayment(), callback);
+
+        FakeReactContext.Launch launch = context.lastLaunch();
+        module.onActivityResult(null, launch.requestCode, resultCode, data);
+
+        ReadableMap result = callback.result();
+        long roundTripNanos = callback.invokedAtNanos() - launch.launchedAtNanos;
+        assertTrue("Launch to callback took " + roundTripNanos / 1000 + "us",
+                roundTripNanos >= 0 && roundTripNanos < MAX_ROUND_TRIP_NANOS);
+        assertEquals(recordedBefore + 1, metrics().getMap(PayHereMetrics.TIME_TO_RESULT).getInt("count"));
+        return result;
+    }
+
+    private static ReadableArray pendingResults(PayhereOfficialModule module) {
+        Promise promise = Mockito.mock(Promise.class);
+        module.getPendingResults(promise);
+
+        ArgumentCaptor<Object> value = ArgumentCaptor.forClass(Object.class);
+        Mockito.verify(promise).resolve(value.capture());
+        return (ReadableArray) value.getValue();
+    }
+
+    private ReadableMap validation(ReadableMap payment) {
+        Promise promise = Mockito.mock(Promise.class);
+        module.validatePayment(payment, promise);
+
+        ArgumentCaptor<Object> value = ArgumentCaptor.forClass(Object.class);
+        Mockito.verify(promise).resolve(value.capture());
+        return (ReadableMap) value.getValue();
+    }
+
+    private ReadableMap metrics() {
+        Promise promise = Mockito.mock(Promise.class);
+        module.getMetrics(promise);
+
+        ArgumentCaptor<Object> value = ArgumentCaptor.forClass(Object.class);
+        Mockito.verify(promise).resolve(value.capture());
+        return (ReadableMap) value.getValue();
+    }
+
+    /**
+     * @return The structured error sent as the second onError argument
+     */
+    private static ReadableMap assertError(ReadableMap result, String code) {
+        assertFalse(result.getBoolean("success"));
+        assertEquals("error", result.getString("jscallback"));
+
+        ReadableMap error = result.getMap("jserror");
+        assertEquals(code, error.getString("code"));
+        assertEquals(result.getString("jsdata"), error.getString("message"));
+        return error;
+    }
+
+    private static void assertDismissed(ReadableMap result) {
+        assertFalse(result.getBoolean("success"));
+        assertEquals("dismiss", result.getString("jscallback"));
+        assertFalse(result.hasKey("jsdata"));
+    }
+}
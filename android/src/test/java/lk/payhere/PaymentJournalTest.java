@@ -0,0 +1,122 @@
+package lk.payhere;
+
+import com.google.gson.JsonObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+import lk.payhere.core.PaymentRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Simulates process restarts by opening the same journal file with a new PaymentJournal.
+ */
+public class PaymentJournalTest {
+
+    private static final PayHereLogger SILENT = new PayHereLogger(PayHereLogger.NONE, PayHereLogger.LOGCAT);
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("payhere-journal").toFile();
+        file = new File(dir, "payhere/sessions.journal");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = file.getParentFile().listFiles();
+        if (files != null){
+            for (File f : files){
+                f.delete();
+            }
+        }
+        file.getParentFile().delete();
+        dir.delete();
+    }
+
+    @Test
+    public void recoversSessionsLeftOpen() throws Exception {
+        PaymentJournal before = new PaymentJournal(file, SILENT);
+        String delivered = before.open(11010, "Order-1", PaymentRequest.MODE_ONETIME);
+        before.open(11011, "Order-2", PaymentRequest.MODE_AUTHORIZATION);
+        before.close(delivered);
+        before.flush();
+
+        List<PaymentJournal.Entry> recovered = new PaymentJournal(file, SILENT).takeRecovered();
+
+        assertEquals(1, recovered.size());
+        PaymentJournal.Entry entry = recovered.get(0);
+        assertEquals("Order-2", entry.orderId);
+        assertEquals(11011, entry.requestCode);
+        assertEquals(PaymentRequest.MODE_AUTHORIZATION, entry.mode);
+        assertNull(entry.result);
+    }
+
+    @Test
+    public void keepsRecoveredResultsUntilTaken() throws Exception {
+        PaymentJournal before = new PaymentJournal(file, SILENT);
+        before.open(11010, "Order-1", PaymentRequest.MODE_ONETIME);
+        before.flush();
+
+        JsonObject result = new JsonObject();
+        result.addProperty("success", true);
+        result.addProperty("jsdata", "320025071278");
+
+        PaymentJournal restarted = new PaymentJournal(file, SILENT);
+        assertFalse(restarted.recover(11011, result));
+        assertTrue(restarted.recover(11010, result));
+        assertFalse(restarted.awaitsResult(11010));
+        restarted.flush();
+
+        PaymentJournal again = new PaymentJournal(file, SILENT);
+        List<PaymentJournal.Entry> recovered = again.takeRecovered();
+        again.flush();
+
+        assertEquals(1, recovered.size());
+        assertEquals("320025071278", recovered.get(0).result.get("jsdata").getAsString());
+        assertTrue(new PaymentJournal(file, SILENT).takeRecovered().isEmpty());
+    }
+
+    @Test
+    public void compactionKeepsSessionsOfTheCurrentProcess() throws Exception {
+        PaymentJournal before = new PaymentJournal(file, SILENT);
+        before.open(11010, "Order-1", PaymentRequest.MODE_ONETIME);
+        before.flush();
+
+        PaymentJournal restarted = new PaymentJournal(file, SILENT);
+        restarted.open(11010, "Order-2", PaymentRequest.MODE_ONETIME);
+        assertEquals(1, restarted.takeRecovered().size());
+        restarted.flush();
+
+        List<PaymentJournal.Entry> recovered = new PaymentJournal(file, SILENT).takeRecovered();
+        assertEquals(1, recovered.size());
+        assertEquals("Order-2", recovered.get(0).orderId);
+    }
+
+    @Test
+    public void skipsTornRecords() throws Exception {
+        PaymentJournal before = new PaymentJournal(file, SILENT);
+        before.open(11010, "Order-1", PaymentRequest.MODE_ONETIME);
+        before.flush();
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("{\"t\":\"end\",\"k\":".getBytes("UTF-8"));
+        out.close();
+
+        List<PaymentJournal.Entry> recovered = new PaymentJournal(file, SILENT).takeRecovered();
+        assertEquals(1, recovered.size());
+        assertEquals("Order-1", recovered.get(0).orderId);
+    }
+}
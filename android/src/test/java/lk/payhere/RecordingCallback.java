@@ -0,0 +1,47 @@
+package lk.payhere;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Callback that records what JS would receive.
+ */
+class RecordingCallback implements Callback {
+
+    private final List<Object[]> invocations = new ArrayList<>();
+    /** System.nanoTime() of the first invocation */
+    private long invokedAtNanos;
+
+    @Override
+    public void invoke(Object... args) {
+        if (invocations.isEmpty()){
+            invokedAtNanos = System.nanoTime();
+        }
+        invocations.add(args);
+    }
+
+    int invocationCount() {
+        return invocations.size();
+    }
+
+    long invokedAtNanos() {
+        return invokedAtNanos;
+    }
+
+    /**
+     * The result map of the only invocation.
+     */
+    ReadableMap result() {
+        if (invocations.size() != 1){
+            throw new AssertionError("Expected one invocation, got " + invocations.size());
+        }
+        Object[] args = invocations.get(0);
+        if (args.length != 1 || !(args[0] instanceof ReadableMap)){
+            throw new AssertionError("Expected a single result map");
+        }
+        return (ReadableMap) args[0];
+    }
+}
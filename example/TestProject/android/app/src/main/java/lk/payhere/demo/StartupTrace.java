@@ -0,0 +1,79 @@
+package lk.payhere.demo;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactMarker;
+import com.facebook.react.bridge.ReactMarkerConstants;
+
+/**
+ * Measures cold start: how long the app takes to show its first screen, and
+ * whether the PayHere module was created on the way there.
+ *
+ * Used to compare the SDK before and after its module became lazy. Cold start
+ * the app a few times and read the results with `adb logcat -s PayHereStartup`.
+ * Module creation markers are only logged on the old architecture.
+ */
+final class StartupTrace implements ReactMarker.MarkerListener {
+
+  static final String TAG = "PayHereStartup";
+  private static final String PAYHERE_MODULE = "PayhereOfficial";
+
+  private final long processStartMs;
+  private long moduleCreateStartMs = -1;
+  private long moduleCreateEndMs = -1;
+  private boolean contentAppeared = false;
+
+  private StartupTrace(long processStartMs) {
+    this.processStartMs = processStartMs;
+  }
+
+  /**
+   * Call first thing in Application.onCreate.
+   */
+  static void install() {
+    long processStartMs = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+        ? Process.getStartUptimeMillis()
+        : SystemClock.uptimeMillis();
+    ReactMarker.addListener(new StartupTrace(processStartMs));
+  }
+
+  @Override
+  public synchronized void logMarker(ReactMarkerConstants name, @Nullable String tag, int instanceKey) {
+    long now = SystemClock.uptimeMillis();
+
+    switch (name) {
+      case CREATE_MODULE_START:
+        if (PAYHERE_MODULE.equals(tag) && moduleCreateStartMs < 0) {
+          moduleCreateStartMs = now;
+        }
+        break;
+
+      case CREATE_MODULE_END:
+        if (PAYHERE_MODULE.equals(tag) && moduleCreateEndMs < 0) {
+          moduleCreateEndMs = now;
+          Log.i(TAG, PAYHERE_MODULE + " created " + (now - processStartMs) + "ms after process start"
+              + ", took " + (now - moduleCreateStartMs) + "ms"
+              + (contentAppeared ? "" : " (during startup)"));
+        }
+        break;
+
+      case CONTENT_APPEARED:
+        if (!contentAppeared) {
+          contentAppeared = true;
+          Log.i(TAG, "First screen " + (now - processStartMs) + "ms after process start, "
+              + (moduleCreateEndMs < 0
+                  ? PAYHERE_MODULE + " not created"
+                  : PAYHERE_MODULE + " created during startup"));
+        }
+        break;
+
+      default:
+        break;
+    }
+  }
+}
@@ -1,27 +1,130 @@
-import { NativeModules } from 'react-native';
+import { Platform } from 'react-native';
 
 const JS_CALLBACK_IS_ERROR = 'error';
 const JS_CALLBACK_IS_DISMISS = 'dismiss';
 
+export const ErrorCode = Object.freeze({
+    NETWORK: 'network',
+    VALIDATION: 'validation',
+    CANCELED: 'canceled',
+    PAYMENT_DECLINED: 'payment-declined',
+    INTENT_DATA: 'intent-data',
+    UNKNOWN: 'unknown'
+});
+
+/*
+ * The native module is looked up on first use rather than on import, so
+ * apps that import PayHere but never check out do not create the native
+ * module (or load the PayHere SDK) during startup.
+ */
+var NativePayhereOfficial = null;
+
+function nativeModule(){
+    if (NativePayhereOfficial == null){
+        NativePayhereOfficial = require('./src/NativePayhereOfficial').default;
+    }
+    return NativePayhereOfficial;
+}
+
+/*
+ * Android decodes an 'items' array natively. Other platforms
+ * still expect the flattened 'item_number_N' style keys.
+ */
+function flattenItems(paymentObject){
+    if (Platform.OS === 'android' || !Array.isArray(paymentObject.items)){
+        return paymentObject;
+    }
+
+    const flat = Object.assign({}, paymentObject);
+    const items = paymentObject.items;
+
+    flat.items = paymentObject.items_description != null
+        ? paymentObject.items_description
+        : items.map((item) => item.name).join(', ');
+    delete flat.items_description;
+
+    // Number the array items after any indexed item keys, so they are added to
+    // those items instead of overwriting them (as on Android).
+    let lastIndex = 0;
+    Object.keys(paymentObject).forEach((key) => {
+        const match = /^(?:item_number|item_name|quantity|amount)_(\d+)$/.exec(key);
+        if (match){
+            lastIndex = Math.max(lastIndex, parseInt(match[1], 10));
+        }
+    });
+
+    items.forEach((item, i) => {
+        const index = lastIndex + i + 1;
+        if (item.id != null){
+            flat['item_number_' + index] = String(item.id);
+        }
+        flat['item_name_' + index] = item.name;
+        flat['quantity_' + index] = item.quantity;
+        flat['amount_' + index] = item.amount;
+    });
+
+    return flat;
+}
+
 
 const PayHere = function(){
+    // configure() template, kept in JS where the native module cannot cache it
+    var jsTemplate = null;
+
     var startPayment = function(
       paymentObject,
       onCompleted,
       onError,
       onDismissed
     ) {
-        NativeModules.PayhereOfficial.startPayment(
-          paymentObject,
-          ({success, jsdata, jscallback}) => {
+        if (jsTemplate != null){
+            paymentObject = Object.assign({}, jsTemplate, paymentObject);
+        }
+
+        nativeModule().startPayment(
+          flattenItems(paymentObject),
+          resultHandler(onCompleted, onError, onDismissed));
+    }
+
+    /*
+     * Starts a payment given as JSON text, such as a payment object prepared by
+     * your server. Android reads the JSON natively, without building a JS object.
+     * Takes the same callbacks as startPayment.
+     */
+    var startPaymentJson = function(
+      paymentJson,
+      onCompleted,
+      onError,
+      onDismissed
+    ) {
+        if (typeof nativeModule().startPaymentJson !== 'function'){
+            var paymentObject;
+            try{
+                paymentObject = JSON.parse(paymentJson);
+            }
+            catch(error){
+                onError('Malformed payment JSON: ' + error.message);
+                return;
+            }
+            startPayment(paymentObject, onCompleted, onError, onDismissed);
+            return;
+        }
+
+        nativeModule().startPaymentJson(
+          paymentJson,
+          resultHandler(onCompleted, onError, onDismissed));
+    }
+
+    function resultHandler(onCompleted, onError, onDismissed){
+        return ({success, jsdata, jscallback, jserror, jspayment}) => {
 
             try{
                 if (success){
-                    onCompleted(jsdata);
+                    onCompleted(jsdata, jspayment);
                 }
                 else{
                     if (jscallback == JS_CALLBACK_IS_ERROR){
-                        onError(jsdata);
+                        onError(jsdata, jserror);
                     }
                     else if (jscallback == JS_CALLBACK_IS_DISMISS){
                         onDismissed();
@@ -34,11 +137,106 @@ const PayHere = function(){
             catch(error){
                 onError(error);
             }
-        });
+        };
+    }
+
+    /*
+     * Loads the native SDK ahead of the first checkout.
+     * Resolves with {durationMs, alreadyLoaded}.
+     */
+    var preload = function() {
+        if (typeof nativeModule().preload !== 'function'){
+            return Promise.resolve({ durationMs: 0, alreadyLoaded: true });
+        }
+        return nativeModule().preload();
+    }
+
+    /*
+     * Caches the merchant and customer fields that are the same for every order
+     * (sandbox, merchant_id, notify_url, currency, customer and address details).
+     * startPayment then only needs the per-order fields. Pass null to clear.
+     */
+    var configure = function(template) {
+        if (typeof nativeModule().configure !== 'function'){
+            jsTemplate = template || null;
+            return Promise.resolve();
+        }
+        return nativeModule().configure(template || null);
+    }
+
+    function unsupported(name){
+        return Promise.reject(new Error('PayHere.' + name + ' is not supported on ' + Platform.OS));
+    }
+
+    /*
+     * Runs the checks startPayment would run, without launching a payment.
+     * Resolves with {valid, errors}, where errors lists every problem found.
+     */
+    var validatePayment = function(paymentObject) {
+        if (typeof nativeModule().validatePayment !== 'function'){
+            return unsupported('validatePayment');
+        }
+        return nativeModule().validatePayment(paymentObject);
+    }
+
+    /*
+     * Validates many payment objects in parallel.
+     * Resolves with an array of {valid, errors}, in the same order.
+     */
+    var validatePayments = function(paymentObjects) {
+        if (typeof nativeModule().validatePayments !== 'function'){
+            return unsupported('validatePayments');
+        }
+        return nativeModule().validatePayments(paymentObjects);
+    }
+
+    /*
+     * Queries the status of the latest payment for an order.
+     * options: {accessToken, sandbox}. The access token must come from your server.
+     * Resolves with {found, message, paymentNo, orderId, date, status, currency,
+     * amount, method, cardHolderName, cardNo}.
+     */
+    var getPaymentStatus = function(orderId, options) {
+        if (typeof nativeModule().getPaymentStatus !== 'function'){
+            return unsupported('getPaymentStatus');
+        }
+        return nativeModule().getPaymentStatus(orderId, options || {});
+    }
+
+    /*
+     * Reads the payment latency histograms (parse, launch, timeToResult) and
+     * outcome counters (completed, dismissed, error) recorded by the native module.
+     */
+    var getMetrics = function() {
+        if (typeof nativeModule().getMetrics !== 'function'){
+            return unsupported('getMetrics');
+        }
+        return nativeModule().getMetrics();
+    }
+
+    /*
+     * Collects payments that a previous run of the app launched but could not
+     * report, because the app was killed during the checkout. Each is returned once.
+     * Resolves with an array of {orderId, mode, startedAt, result}, where result is
+     * what startPayment's callback would have received, or null if unknown.
+     */
+    var getPendingResults = function() {
+        if (typeof nativeModule().getPendingResults !== 'function'){
+            return Promise.resolve([]);
+        }
+        return nativeModule().getPendingResults();
     }
 
     return {
-        startPayment
+        startPayment,
+        startPaymentJson,
+        preload,
+        configure,
+        validatePayment,
+        validatePayments,
+        getPaymentStatus,
+        getMetrics,
+        getPendingResults
     }
 }();
 
@@ -0,0 +1,23 @@
+import type { TurboModule } from 'react-native';
+import { TurboModuleRegistry } from 'react-native';
+
+/*
+ * Codegen spec of the PayhereOfficial native module.
+ *
+ * On the new architecture this is compiled into a TurboModule, so calls
+ * cross JSI directly. On the old architecture TurboModuleRegistry falls
+ * back to NativeModules.PayhereOfficial.
+ */
+export interface Spec extends TurboModule {
+  startPayment(payment: Object, callback: (result: Object) => void): void;
+  startPaymentJson(paymentJson: string, callback: (result: Object) => void): void;
+  validatePayment(payment: Object): Promise<Object>;
+  validatePayments(payments: Array<Object>): Promise<Array<Object>>;
+  preload(): Promise<Object>;
+  configure(template: Object | null): Promise<void>;
+  getPaymentStatus(orderId: string, options: Object): Promise<Object>;
+  getMetrics(): Promise<Object>;
+  getPendingResults(): Promise<Array<Object>>;
+}
+
+export default TurboModuleRegistry.getEnforcing<Spec>('PayhereOfficial');